@@ -0,0 +1,118 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing of frames the way {@link AbstractClientListener#readBytes(byte[])},
+ * {@link AbstractClientListener#readFrame()} and {@link AbstractClientListener#writeBytes(byte[], byte[])} do it,
+ * without sockets. Every invocation reads or writes {@link #FRAMES} frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+
+    static final int FRAMES = 1000;
+
+    /**
+     * LF - 1-byte separator, CRLF and WIDE - multi-byte separators, VARINT - varint-prefixed framing
+     */
+    @Param({"LF", "CRLF", "WIDE", "VARINT"})
+    public String framing;
+
+    @Param({"16", "1024"})
+    public int frameSize;
+
+    private byte[] separator;
+    private byte[] payload;
+    private byte[] stream;
+    private OutboundQueue queue;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (framing) {
+            case "CRLF":
+                separator = "\r\n".getBytes(StandardCharsets.US_ASCII);
+                break;
+            case "WIDE":
+                separator = "<<END>>".getBytes(StandardCharsets.US_ASCII);
+                break;
+            default:
+                separator = "\n".getBytes(StandardCharsets.US_ASCII);
+        }
+        payload = new byte[frameSize];
+        Arrays.fill(payload, (byte) 'a');
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < FRAMES; i++) {
+            if (isPrefixed()) {
+                Framing.varintPrefixed().write(out, payload, 0, payload.length);
+            } else {
+                out.write(payload);
+                out.write(separator);
+            }
+        }
+        stream = out.toByteArray();
+        queue = new OutboundQueue(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        final FrameReader reader = new FrameReader(new ByteArrayInputStream(stream));
+        byte[] frame;
+        while ((frame = isPrefixed() ? Framing.varintPrefixed().read(reader) : reader.readFrame(separator)) != null) {
+            blackhole.consume(frame);
+        }
+    }
+
+    @Benchmark
+    public void write() {
+        for (int i = 0; i < FRAMES; i++) {
+            if (isPrefixed()) {
+                queue.enqueue(payload, Framing.varintPrefixed(), Runnable::run);
+            } else {
+                queue.enqueueRaw(payload, separator, Runnable::run);
+            }
+        }
+    }
+
+    private boolean isPrefixed() {
+        return "VARINT".equals(framing);
+    }
+}
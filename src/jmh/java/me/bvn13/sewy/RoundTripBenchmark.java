@@ -0,0 +1,94 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.PingCommand;
+import me.bvn13.sewy.command.PongCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ping-pong calls from {@link CommandClient} to {@link CommandServer} over loopback.
+ * Benchmark threads share the given count of connections.
+ * Sample time mode reports latency percentiles (p50, p99 etc.), throughput mode reports calls per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int connections;
+
+    @Param({"blocking", "nio"})
+    public String server;
+
+    private CommandServer commandServer;
+    private CommandClient[] clients;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        final int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        commandServer = "nio".equals(server)
+                ? new NioCommandServer("localhost", port)
+                : new CommandServer("localhost", port);
+        commandServer.setDispatcher(new CommandDispatcher().on(PingCommand.class, PongCommand::new));
+        clients = new CommandClient[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new CommandClient("localhost", port);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (CommandClient client : clients) {
+            client.stop();
+        }
+        commandServer.stop();
+    }
+
+    @Benchmark
+    public PongCommand ping() throws Exception {
+        final CommandClient client = clients[Math.floorMod(next.getAndIncrement(), clients.length)];
+        return client.<PongCommand>call(new PingCommand()).get(10, TimeUnit.SECONDS);
+    }
+}
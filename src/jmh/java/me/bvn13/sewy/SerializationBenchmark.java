@@ -0,0 +1,103 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializers on commands shaped like the ones of tests: some scalar fields and the list of small objects
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"java", "binary"})
+    public String serializer;
+
+    @Param({"0", "10", "100"})
+    public int items;
+
+    private CommandSerializer commandSerializer;
+    private SampleCommand command;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        Sewy.register(SampleCommand.class);
+        commandSerializer = "binary".equals(serializer) ? new BinaryCommandSerializer() : new JavaCommandSerializer();
+        command = new SampleCommand();
+        for (int i = 0; i < items; i++) {
+            command.data.add(new SampleCommand.Item("item-" + i, i));
+        }
+        serialized = commandSerializer.serialize(command);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return commandSerializer.serialize(command);
+    }
+
+    @Benchmark
+    public int serializeIntoPooledBuffer() throws IOException {
+        final PooledOutputStream out = new PooledOutputStream(Sewy.getBufferPool());
+        commandSerializer.serialize(command, out);
+        final int size = out.size();
+        out.discard();
+        return size;
+    }
+
+    @Benchmark
+    public AbstractCommand deserialize() throws IOException {
+        return commandSerializer.deserialize(serialized, 0, serialized.length);
+    }
+
+    public static class SampleCommand extends AbstractCommand {
+        private long time = System.currentTimeMillis();
+        private String name = "sample";
+        private List<Item> data = new ArrayList<>();
+
+        public static class Item implements Serializable {
+            private final String string;
+            private final int number;
+
+            public Item(String string, int number) {
+                this.string = string;
+                this.number = number;
+            }
+        }
+    }
+}
@@ -22,10 +22,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-import static me.bvn13.sewy.Sewy.getSeparator;
 
 /**
  * TCP Client listener.
@@ -34,12 +40,28 @@ import static me.bvn13.sewy.Sewy.getSeparator;
  */
 public abstract class AbstractClientListener implements Runnable {
 
+    private static final AtomicLong IDS = new AtomicLong();
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
     protected final Socket socket;
     protected OutputStream out;
     protected InputStream in;
 
+    private final long id = IDS.incrementAndGet();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final List<Runnable> stopHandlers = new CopyOnWriteArrayList<>();
+    private final FrameReader reader;
+    private final OutboundQueue outbound;
+    // set when the listener is driven by event loop of NioCommandServer
+    private NioConnection connection;
+    // replaced with metrics of server or client owning the listener
+    private volatile Metrics metrics = new Metrics();
+    private volatile LineCodec lineCodec = new LineCodec(Sewy.getCharset());
+    private volatile int maxFrameSize = Sewy.getMaxFrameSize();
+    private volatile long lastRead = System.nanoTime();
+    private volatile long lastWrite = lastRead;
+
     protected AbstractClientListener(Socket socket) {
         log.debug("Initializing client listener");
         this.socket = socket;
@@ -52,6 +74,9 @@ public abstract class AbstractClientListener implements Runnable {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        this.reader = new FrameReader(in);
+        this.reader.setMaxFrameSize(maxFrameSize);
+        this.outbound = new OutboundQueue(out, OutboundQueue.writers(), this::frameSent);
     }
 
     /**
@@ -62,21 +87,74 @@ public abstract class AbstractClientListener implements Runnable {
     public abstract void run();
 
     /**
-     * Reads line (separated with '\n') from socket
+     * Called once the connection is established and registered, right before {@link #run()}.
+     * Override it according the needs
+     */
+    protected void onConnect() {
+    }
+
+    /**
+     * Called once the connection is closed by any side.
+     * Override it according the needs
+     */
+    protected void onDisconnect() {
+    }
+
+    /**
+     * @return unique identifier of the connection
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return {@code true} if the listener is stopped
+     */
+    public boolean isStopped() {
+        return stopped.get();
+    }
+
+    /**
+     * Reads line (frame cut according to {@link #framing()}) from socket
      *
-     * @return the line read from socket
+     * @return the line read from socket, decoded with {@link #getCharset()}
      */
     public String readLine() throws IOException {
-        final byte[] bytes = readBytes(getSeparator());
-        final StringBuilder sb = new StringBuilder();
-        for (byte aByte : bytes) {
-            sb.append((char) aByte);
-        }
-        final String string = sb.toString();
+        final LineCodec lineCodec = this.lineCodec;
+        final String line = readFrame(lineCodec::decode);
+        final String string = line == null ? "" : line;
         if (log.isTraceEnabled()) log.trace("Received: " + string);
         return string;
     }
 
+    /**
+     * Reads line (frame cut according to {@link #framing()}) from socket without making the string of it.
+     * Suits parsing lines in the thread reading the socket.
+     *
+     * @return the line read from socket, valid until the next line is read
+     */
+    public CharSequence readLineView() throws IOException {
+        final LineCodec lineCodec = this.lineCodec;
+        final CharSequence line = readFrame((buffer, offset, length) -> lineCodec.decodeView(ByteBuffer.wrap(buffer, offset, length)));
+        return line == null ? "" : line;
+    }
+
+    /**
+     * @return charset of lines
+     */
+    public Charset getCharset() {
+        return lineCodec.getCharset();
+    }
+
+    /**
+     * Sets charset of lines read and written since then
+     *
+     * @param charset charset of lines, {@link Sewy#getCharset()} by default
+     */
+    public void setCharset(Charset charset) {
+        this.lineCodec = new LineCodec(charset);
+    }
+
     /**
      * Reads data from socket until {@code separator} is encountered
      *
@@ -84,37 +162,168 @@ public abstract class AbstractClientListener implements Runnable {
      * @return array of bytes read from socket
      */
     public byte[] readBytes(byte[] separator) throws IOException {
-        final List<Byte> data = new ArrayList<>(2048 * 2048);
-        List<Byte> buffer = new ArrayList<>(separator.length);
-        int separatorPosition = 0;
-        while (socket.isConnected() && !socket.isClosed()) {
-            byte[] portion = in.readNBytes(1);
-            if (portion == null || portion.length == 0) {
-                break;
-            }
-            if (portion[0] == separator[separatorPosition]) {
-                if (separatorPosition == separator.length - 1) {
-                    break;
-                }
-                separatorPosition++;
-                buffer.add(portion[0]);
-                continue;
-            } else {
-                separatorPosition = 0;
-                data.addAll(buffer);
-                buffer.clear();
-            }
-            data.add(portion[0]);
+        if (!socket.isConnected() || socket.isClosed()) {
+            return new byte[0];
         }
-        final byte[] bytes = new byte[data.size()];
-        int i = 0;
-        for (Byte aByte : data) {
-            bytes[i++] = aByte;
+        final byte[] frame;
+        try {
+            frame = reader.readFrame(separator);
+        } catch (FrameTooLargeException e) {
+            rejectFrame(e);
+            throw e;
+        }
+        if (frame == null) {
+            // the stream is ended, so the connection is closed by opposite side
+            stop();
+        } else {
+            frameReceived(frame.length);
         }
+        final byte[] bytes = frame == null ? new byte[0] : frame;
         if (log.isTraceEnabled()) log.trace("Received {} bytes: {}", bytes.length, bytes);
         return bytes;
     }
 
+    /**
+     * Reads one frame from socket according to {@link #framing()}
+     *
+     * @return frame bytes or {@code null} if the stream is ended
+     * @throws FrameTooLargeException if the frame exceeds {@link #getMaxFrameSize() maximum frame size},
+     *                                the connection is closed then
+     */
+    public byte[] readFrame() throws IOException {
+        if (!socket.isConnected() || socket.isClosed()) {
+            return null;
+        }
+        final byte[] bytes;
+        try {
+            bytes = framing().read(reader);
+        } catch (FrameTooLargeException e) {
+            rejectFrame(e);
+            throw e;
+        }
+        if (bytes == null) {
+            // the stream is ended, so the connection is closed by opposite side
+            stop();
+        } else {
+            frameReceived(bytes.length);
+        }
+        if (log.isTraceEnabled() && bytes != null) log.trace("Received {} bytes: {}", bytes.length, bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads one frame from socket according to {@link #framing()} decoding it right from the buffer of the reader,
+     * so the frame is not copied
+     *
+     * @return decoded frame or {@code null} if the stream is ended
+     */
+    private <T> T readFrame(FrameReader.Decoder<T> decoder) throws IOException {
+        if (!socket.isConnected() || socket.isClosed()) {
+            return null;
+        }
+        final T frame;
+        try {
+            frame = framing().read(reader, (buffer, offset, length) -> {
+                frameReceived(length);
+                return decoder.decode(buffer, offset, length);
+            });
+        } catch (FrameTooLargeException e) {
+            rejectFrame(e);
+            throw e;
+        }
+        if (frame == null) {
+            // the stream is ended, so the connection is closed by opposite side
+            stop();
+        }
+        return frame;
+    }
+
+    /**
+     * Writes frame into socket according to {@link #framing()}.
+     * Flushes after writing.
+     *
+     * @param bytes frame payload to be sent into socket
+     */
+    public void writeFrame(byte[] bytes) throws IOException {
+        if (connection != null) {
+            // event loop writes the frame later, waiting for it in event loop thread leads to dead lock
+            writeFrameAsync(bytes, Runnable::run);
+            return;
+        }
+        await(writeFrameAsync(bytes, Runnable::run));
+    }
+
+    /**
+     * Enqueues frame to be written into socket according to {@link #framing()}
+     *
+     * @param bytes    frame payload to be sent into socket
+     * @param executor executor to write the frame with if nobody is writing into this socket at the moment
+     * @return future completed once the frame is written
+     */
+    CompletableFuture<Void> writeFrameAsync(byte[] bytes, Executor executor) {
+        if (log.isTraceEnabled()) log.trace("Sending {} bytes: {}", bytes.length, bytes);
+        if (connection != null) {
+            return writeToConnection(ByteBuffer.wrap(bytes), null);
+        }
+        return outbound.enqueue(bytes, framing(), executor);
+    }
+
+    /**
+     * Writes frame held by pooled buffer into socket according to {@link #framing()}.
+     * The buffer is released once written.
+     *
+     * @param frame frame payload between position and limit of heap buffer
+     */
+    void writeFrame(PooledBuffer frame) throws IOException {
+        if (connection != null) {
+            writeFrameAsync(frame, Runnable::run);
+            return;
+        }
+        await(writeFrameAsync(frame, Runnable::run));
+    }
+
+    /**
+     * Enqueues frame held by pooled buffer to be written into socket according to {@link #framing()}.
+     * The buffer is released once written.
+     *
+     * @param frame    frame payload between position and limit of heap buffer
+     * @param executor executor to write the frame with if nobody is writing into this socket at the moment
+     * @return future completed once the frame is written
+     */
+    CompletableFuture<Void> writeFrameAsync(PooledBuffer frame, Executor executor) {
+        if (log.isTraceEnabled()) log.trace("Sending {} bytes", frame.buffer().remaining());
+        if (connection != null) {
+            return writeToConnection(frame.buffer(), frame);
+        }
+        return outbound.enqueue(frame, framing(), executor);
+    }
+
+    /**
+     * @return executor to write frames with when the caller must never wait for the socket
+     */
+    Executor writers() {
+        return outbound.handOff();
+    }
+
+    /**
+     * Gathers the payload along with the header or separator kept in direct buffer, the payload is not copied
+     *
+     * @param payload payload between position and limit
+     * @param pooled  buffer holding the payload to be released once written, {@code null} if not pooled
+     */
+    private CompletableFuture<Void> writeToConnection(ByteBuffer payload, PooledBuffer pooled) {
+        final Framing framing = framing();
+        final PooledBuffer envelope = Sewy.getBufferPool().acquireDirect(framing.envelopeSize());
+        final CompletableFuture<Void> writing = connection.write(payload.remaining(), framing.frame(envelope.buffer(), payload));
+        writing.whenComplete((nothing, e) -> {
+            envelope.release();
+            if (pooled != null) {
+                pooled.release();
+            }
+        });
+        return writing;
+    }
+
     /**
      * Writes line into socket ending with default separator '\n'.
      * Flushes after writing.
@@ -124,31 +333,184 @@ public abstract class AbstractClientListener implements Runnable {
      */
     public void writeBytes(byte[] bytes, byte[] separator) throws IOException {
         if (log.isTraceEnabled()) log.trace("Sending {} bytes: {}", bytes.length, bytes);
-        out.write(bytes);
-        out.write(separator);
-        out.flush();
+        if (connection != null) {
+            connection.write(bytes.length, ByteBuffer.wrap(bytes), ByteBuffer.wrap(separator));
+            return;
+        }
+        await(outbound.enqueueRaw(bytes, separator, Runnable::run));
     }
 
     /**
-     * Writes line into socket ending with default separator '\n'.
+     * @return count of frames waiting to be written into socket
+     */
+    public int getOutboundQueueSize() {
+        return connection != null ? connection.pending() : outbound.size();
+    }
+
+    /**
+     * Writes line into socket as one frame according to {@link #framing()}.
      * Flushes after writing.
      *
      * @param data data to be sent into socket
      */
     public void writeLine(String data) {
+        writeLine((CharSequence) data);
+    }
+
+    /**
+     * Writes line into socket as one frame according to {@link #framing()}.
+     * The line is encoded with {@link #getCharset()} straight into pooled buffer.
+     * Flushes after writing.
+     *
+     * @param data data to be sent into socket
+     */
+    public void writeLine(CharSequence data) {
         if (log.isTraceEnabled()) log.trace("Sending: " + data);
         try {
-            writeBytes(data.getBytes(), getSeparator());
+            writeFrame(lineCodec.encode(data, Sewy.getBufferPool()));
         } catch (Exception e) {
             log.error("", e);
         }
     }
 
+    /**
+     * @return size of the largest frame accepted
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Sets size of the largest frame accepted. Once larger frame is received the connection is closed.
+     *
+     * @param maxFrameSize size of the largest frame, {@link Sewy#getMaxFrameSize()} by default
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize < 1) {
+            throw new IllegalArgumentException("Wrong max frame size: " + maxFrameSize);
+        }
+        this.maxFrameSize = maxFrameSize;
+        reader.setMaxFrameSize(maxFrameSize);
+    }
+
+    /**
+     * Closes the connection sending too large frame
+     *
+     * @param e the reason
+     */
+    void rejectFrame(FrameTooLargeException e) {
+        log.warn("Closing connection: {}", e.getMessage());
+        metrics.frameTooLarge();
+        stop();
+    }
+
+    /**
+     * Attaches the listener to non-blocking connection.
+     * Since then data is written through the connection instead of socket stream.
+     *
+     * @param connection connection driven by event loop
+     */
+    void attach(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Counts the frame received refreshing the last read time
+     *
+     * @param length payload length
+     */
+    void frameReceived(int length) {
+        metrics.frameReceived(length);
+        lastRead = System.nanoTime();
+    }
+
+    /**
+     * Counts the frame written into socket refreshing the last write time
+     *
+     * @param length payload length
+     */
+    void frameSent(int length) {
+        metrics.frameSent(length);
+        lastWrite = System.nanoTime();
+    }
+
+    /**
+     * @return {@link System#nanoTime()} the last frame is received at, or the listener is created at
+     */
+    long lastReadNanos() {
+        return lastRead;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} the last frame is sent at, or the listener is created at
+     */
+    long lastWriteNanos() {
+        return lastWrite;
+    }
+
+    /**
+     * @param metrics metrics of server or client owning the listener
+     */
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    static void await(CompletableFuture<Void> writing) throws IOException {
+        try {
+            writing.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Framing strategy of this listener
+     *
+     * @return {@link Sewy#getFraming()} by default
+     */
+    protected Framing framing() {
+        return Sewy.getFraming();
+    }
+
+    /**
+     * Runs the listener notifying it about established connection first
+     */
+    void serve() {
+        onConnect();
+        run();
+    }
+
+    /**
+     * Adds handler to be called once the listener is stopped
+     *
+     * @param handler stop handler
+     */
+    void whenStopped(Runnable handler) {
+        stopHandlers.add(handler);
+        if (stopped.get() && stopHandlers.remove(handler)) {
+            handler.run();
+        }
+    }
+
     /**
      * Stops client listener gracefully
      */
     public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
         log.debug("Stopping");
+        if (connection != null) {
+            connection.close();
+        }
+        outbound.close();
         try {
             out.close();
             in.close();
@@ -160,5 +522,15 @@ public abstract class AbstractClientListener implements Runnable {
         } catch (IOException e) {
             log.warn("Unable to close socket");
         }
+        try {
+            onDisconnect();
+        } catch (Exception e) {
+            log.error("Failed to handle disconnection", e);
+        }
+        for (Runnable handler : stopHandlers) {
+            if (stopHandlers.remove(handler)) {
+                handler.run();
+            }
+        }
     }
 }
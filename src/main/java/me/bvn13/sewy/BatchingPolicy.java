@@ -0,0 +1,70 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.time.Duration;
+
+/**
+ * Limits of batch of commands packed into one frame.
+ * The batch is sent once any limit is reached.
+ */
+public final class BatchingPolicy {
+
+    private final int maxCount;
+    private final int maxBytes;
+    private final Duration maxLinger;
+
+    /**
+     * @param maxCount  count of commands in the batch
+     * @param maxBytes  size of the batch, single command larger than that is sent in its own batch
+     * @param maxLinger time the first command of the batch waits for others, rounded up to 10 ms tick of the shared timer
+     */
+    public BatchingPolicy(int maxCount, int maxBytes, Duration maxLinger) {
+        if (maxCount < 1) {
+            throw new IllegalArgumentException("Wrong max count: " + maxCount);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Wrong max bytes: " + maxBytes);
+        }
+        if (maxLinger == null || maxLinger.isNegative()) {
+            throw new IllegalArgumentException("Wrong max linger: " + maxLinger);
+        }
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxLinger = maxLinger;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Duration getMaxLinger() {
+        return maxLinger;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingPolicy{" +
+                "maxCount=" + maxCount +
+                ", maxBytes=" + maxBytes +
+                ", maxLinger=" + maxLinger +
+                '}';
+    }
+}
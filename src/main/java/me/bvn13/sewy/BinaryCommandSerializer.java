@@ -0,0 +1,405 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compact binary serializer.
+ * Command is written as its type id (see {@link Sewy#register(Class)}) followed by its fields
+ * without any class descriptors. Primitives, boxed primitives, strings, enums, byte arrays and
+ * registered commands are written natively, any other {@link Serializable} field value
+ * falls back to Java serialization.
+ * Both sides must register the same commands in the same order and use the same versions of command classes.
+ * Commands must have constructor without arguments, it may be private.
+ */
+public class BinaryCommandSerializer implements CommandSerializer {
+
+    private static final int NULL = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int CHAR = 4;
+    private static final int INT = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+    private static final int STRING = 9;
+    private static final int BYTES = 10;
+    private static final int ENUM = 11;
+    private static final int COMMAND = 12;
+    private static final int SERIALIZED = 13;
+
+    private static final ClassValue<ClassCodec> CODECS = new ClassValue<>() {
+        @Override
+        protected ClassCodec computeValue(Class<?> type) {
+            return new ClassCodec(type);
+        }
+    };
+
+    private final ObjectInputFilter filter;
+
+    /**
+     * Accepts values falling back to Java serialization if they belong to registered commands only, see {@link CommandFilter}
+     */
+    public BinaryCommandSerializer() {
+        this(new CommandFilter());
+    }
+
+    /**
+     * @param filter filter of values falling back to Java serialization, {@code null} to accept anything
+     */
+    public BinaryCommandSerializer(ObjectInputFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public byte[] serialize(AbstractCommand command) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        writeCommand(new DataOutputStream(bytes), command);
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void serialize(AbstractCommand command, OutputStream out) throws IOException {
+        writeCommand(new DataOutputStream(out), command);
+    }
+
+    @Override
+    public AbstractCommand deserialize(byte[] data, int offset, int length) throws IOException {
+        return readCommand(new DataInputStream(new ByteArrayInputStream(data, offset, length)), filter);
+    }
+
+    private static void writeCommand(DataOutput out, AbstractCommand command) throws IOException {
+        final int typeId = Sewy.getTypeId(command.getClass());
+        if (typeId < 0) {
+            throw new IOException("Unregistered command: " + command.getClass().getName());
+        }
+        writeVarint(out, typeId);
+        CODECS.get(command.getClass()).write(out, command);
+    }
+
+    private static AbstractCommand readCommand(DataInput in, ObjectInputFilter filter) throws IOException {
+        final int typeId = readVarint(in);
+        final Class<? extends AbstractCommand> type = Sewy.getType(typeId);
+        if (type == null) {
+            throw new IOException("Unexpected command type id received: " + typeId);
+        }
+        return (AbstractCommand) CODECS.get(type).read(in, filter);
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            writeVarlong(out, zigzag((Integer) value));
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarlong(out, zigzag((Long) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeVarint(out, ((byte[]) value).length);
+            out.write((byte[]) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeString(out, ((Enum<?>) value).getDeclaringClass().getName());
+            writeVarint(out, ((Enum<?>) value).ordinal());
+        } else if (value instanceof AbstractCommand && Sewy.getTypeId(value.getClass()) >= 0) {
+            out.writeByte(COMMAND);
+            writeCommand(out, (AbstractCommand) value);
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            final byte[] serialized = SerializationUtils.serialize((Serializable) value);
+            writeVarint(out, serialized.length);
+            out.write(serialized);
+        } else {
+            throw new IOException("Value is not serializable: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInput in, ObjectInputFilter filter) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INT:
+                return (int) unzigzag(readVarlong(in));
+            case LONG:
+                return unzigzag(readVarlong(in));
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case CHAR:
+                return in.readChar();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BYTES:
+                return readBytes(in);
+            case ENUM:
+                return readEnum(readString(in), readVarint(in));
+            case COMMAND:
+                return readCommand(in, filter);
+            case SERIALIZED: {
+                final byte[] bytes = readBytes(in);
+                return CommandFilter.readObject(bytes, 0, bytes.length, filter);
+            }
+            default:
+                throw new IOException("Malformed value tag: " + tag);
+        }
+    }
+
+    private static Object readEnum(String className, int ordinal) throws IOException {
+        final Class<?> type;
+        try {
+            type = Class.forName(className, false, BinaryCommandSerializer.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown enum: " + className, e);
+        }
+        final Object[] constants = type.getEnumConstants();
+        if (constants == null || ordinal >= constants.length) {
+            throw new IOException("Malformed enum value: " + className + "#" + ordinal);
+        }
+        return constants[ordinal];
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        final int length = readVarint(in);
+        // declared length is checked against the data left, so malformed frame never allocates more than its own size
+        if (length < 0 || in instanceof DataInputStream && length > ((DataInputStream) in).available()) {
+            throw new IOException("Malformed length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        final long value = readVarlong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Malformed varint: " + value);
+        }
+        return (int) value;
+    }
+
+    private static void writeVarlong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarlong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint: too long");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads and writes fields of the class.
+     * Fields of superclasses go first, fields of every class are ordered by name.
+     */
+    private static final class ClassCodec {
+        private final Class<?> type;
+        private final Field[] fields;
+        private final Constructor<?> constructor;
+
+        private ClassCodec(Class<?> type) {
+            this.type = type;
+            this.fields = fieldsOf(type);
+            this.constructor = constructorOf(type);
+        }
+
+        private void write(DataOutput out, Object object) throws IOException {
+            requireConstructor();
+            try {
+                for (Field field : fields) {
+                    final Class<?> fieldType = field.getType();
+                    if (fieldType == int.class) {
+                        writeVarlong(out, zigzag(field.getInt(object)));
+                    } else if (fieldType == long.class) {
+                        writeVarlong(out, zigzag(field.getLong(object)));
+                    } else if (fieldType == boolean.class) {
+                        out.writeBoolean(field.getBoolean(object));
+                    } else if (fieldType == byte.class) {
+                        out.writeByte(field.getByte(object));
+                    } else if (fieldType == short.class) {
+                        out.writeShort(field.getShort(object));
+                    } else if (fieldType == char.class) {
+                        out.writeChar(field.getChar(object));
+                    } else if (fieldType == float.class) {
+                        out.writeFloat(field.getFloat(object));
+                    } else if (fieldType == double.class) {
+                        out.writeDouble(field.getDouble(object));
+                    } else {
+                        writeValue(out, field.get(object));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IOException("Unable to serialize " + type.getName(), e);
+            }
+        }
+
+        private Object read(DataInput in, ObjectInputFilter filter) throws IOException {
+            requireConstructor();
+            try {
+                final Object object = constructor.newInstance();
+                for (Field field : fields) {
+                    final Class<?> fieldType = field.getType();
+                    if (fieldType == int.class) {
+                        field.setInt(object, (int) unzigzag(readVarlong(in)));
+                    } else if (fieldType == long.class) {
+                        field.setLong(object, unzigzag(readVarlong(in)));
+                    } else if (fieldType == boolean.class) {
+                        field.setBoolean(object, in.readBoolean());
+                    } else if (fieldType == byte.class) {
+                        field.setByte(object, in.readByte());
+                    } else if (fieldType == short.class) {
+                        field.setShort(object, in.readShort());
+                    } else if (fieldType == char.class) {
+                        field.setChar(object, in.readChar());
+                    } else if (fieldType == float.class) {
+                        field.setFloat(object, in.readFloat());
+                    } else if (fieldType == double.class) {
+                        field.setDouble(object, in.readDouble());
+                    } else {
+                        field.set(object, readValue(in, filter));
+                    }
+                }
+                return object;
+            } catch (ReflectiveOperationException | IllegalArgumentException e) {
+                throw new IOException("Unable to deserialize " + type.getName(), e);
+            }
+        }
+
+        private static Field[] fieldsOf(Class<?> type) {
+            final List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                hierarchy.add(0, current);
+            }
+            final List<Field> fields = new ArrayList<>();
+            for (Class<?> current : hierarchy) {
+                final Field[] declared = current.getDeclaredFields();
+                Arrays.sort(declared, Comparator.comparing(Field::getName));
+                for (Field field : declared) {
+                    if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+
+        // refused on writing as well, so the sender knows the command can not be read
+        private void requireConstructor() throws IOException {
+            if (constructor == null) {
+                throw new IOException("Command has no constructor without arguments: " + type.getName());
+            }
+        }
+
+        /**
+         * @return constructor without arguments, {@code null} if there is no such one
+         */
+        private static Constructor<?> constructorOf(Class<?> type) {
+            try {
+                final Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    }
+}
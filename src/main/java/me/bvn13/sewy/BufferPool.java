@@ -0,0 +1,204 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of heap and direct buffers.
+ * Buffers are grouped into size classes of powers of two starting from {@link #MIN_SIZE}.
+ * Every class keeps limited amount of idle buffers, so the pool never holds more than configured.
+ * Buffers bigger than the largest class are allocated every time and left to garbage collector.
+ * Thread safe.
+ */
+public class BufferPool {
+
+    static final int MIN_SIZE = 512;
+    static final int DEFAULT_MAX_POOLED_SIZE = 1024 * 1024;
+    static final long DEFAULT_MAX_IDLE_BYTES_PER_CLASS = 4 * 1024 * 1024;
+
+    private final int maxPooledSize;
+    private final List<ArrayBlockingQueue<PooledBuffer>> heap;
+    private final List<ArrayBlockingQueue<PooledBuffer>> direct;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Pools buffers up to 1 MiB keeping up to 4 MiB of idle buffers per size class and kind
+     */
+    public BufferPool() {
+        this(DEFAULT_MAX_POOLED_SIZE, DEFAULT_MAX_IDLE_BYTES_PER_CLASS);
+    }
+
+    /**
+     * @param maxPooledSize        size of the largest buffer to be pooled, rounded up to power of two
+     * @param maxIdleBytesPerClass amount of idle buffers kept per size class and kind (heap or direct),
+     *                             at least one buffer is kept anyway
+     */
+    public BufferPool(int maxPooledSize, long maxIdleBytesPerClass) {
+        if (maxPooledSize < MIN_SIZE) {
+            throw new IllegalArgumentException("Wrong max pooled size: " + maxPooledSize);
+        }
+        final int classes = sizeClassOf(maxPooledSize) + 1;
+        this.maxPooledSize = sizeOf(classes - 1);
+        this.heap = new ArrayList<>(classes);
+        this.direct = new ArrayList<>(classes);
+        for (int i = 0; i < classes; i++) {
+            final int capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxIdleBytesPerClass / sizeOf(i)));
+            heap.add(new ArrayBlockingQueue<>(capacity));
+            direct.add(new ArrayBlockingQueue<>(capacity));
+        }
+    }
+
+    /**
+     * Takes heap buffer
+     *
+     * @param capacity required capacity
+     * @return buffer with capacity at least as required, cleared
+     */
+    public PooledBuffer acquire(int capacity) {
+        return acquire(capacity, false);
+    }
+
+    /**
+     * Takes direct buffer. Channels read into and write from direct buffers without copying them
+     * through temporary direct buffers of their own
+     *
+     * @param capacity required capacity
+     * @return buffer with capacity at least as required, cleared
+     */
+    public PooledBuffer acquireDirect(int capacity) {
+        return acquire(capacity, true);
+    }
+
+    /**
+     * @return count of buffers taken from the pool
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * @return count of buffers taken from the pool without allocating new one
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * @return count of buffers allocated because there was no idle one of suitable size
+     */
+    public long getAllocatedCount() {
+        return acquired.sum() - reused.sum();
+    }
+
+    /**
+     * @return count of buffers returned to the pool
+     */
+    public long getReleasedCount() {
+        return released.sum();
+    }
+
+    /**
+     * @return count of returned buffers left to garbage collector because the pool is full or they are too big
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return count of buffers taken and not returned yet
+     */
+    public long getOutstandingCount() {
+        return acquired.sum() - released.sum();
+    }
+
+    /**
+     * @return amount of memory held by idle buffers
+     */
+    public long getIdleBytes() {
+        long bytes = 0;
+        for (int i = 0; i < heap.size(); i++) {
+            bytes += (long) (heap.get(i).size() + direct.get(i).size()) * sizeOf(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return size of the largest pooled buffer
+     */
+    public int getMaxPooledSize() {
+        return maxPooledSize;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{" +
+                "acquired=" + getAcquiredCount() +
+                ", reused=" + getReusedCount() +
+                ", released=" + getReleasedCount() +
+                ", dropped=" + getDroppedCount() +
+                ", idleBytes=" + getIdleBytes() +
+                '}';
+    }
+
+    void recycle(PooledBuffer buffer) {
+        released.increment();
+        final int sizeClass = buffer.sizeClass();
+        if (sizeClass < 0 || !(buffer.isDirect() ? direct : heap).get(sizeClass).offer(buffer)) {
+            dropped.increment();
+        }
+    }
+
+    private PooledBuffer acquire(int capacity, boolean isDirect) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Wrong capacity: " + capacity);
+        }
+        acquired.increment();
+        if (capacity > maxPooledSize) {
+            return new PooledBuffer(this, allocate(capacity, isDirect), -1).reset();
+        }
+        final int sizeClass = sizeClassOf(capacity);
+        final PooledBuffer idle = (isDirect ? direct : heap).get(sizeClass).poll();
+        if (idle != null) {
+            reused.increment();
+            return idle.reset();
+        }
+        return new PooledBuffer(this, allocate(sizeOf(sizeClass), isDirect), sizeClass).reset();
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean isDirect) {
+        return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static int sizeClassOf(int capacity) {
+        if (capacity <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+
+    private static int sizeOf(int sizeClass) {
+        return MIN_SIZE << sizeClass;
+    }
+}
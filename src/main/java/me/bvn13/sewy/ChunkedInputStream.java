@@ -0,0 +1,219 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Stream of data received chunk by chunk, see {@link CommandClientListener#onStream(me.bvn13.sewy.command.AbstractCommand, InputStream)}.
+ * The thread reading the connection adds chunks, the handler reads them in its own thread.
+ * Limited amount of data is buffered: once it is exceeded the connection stops reading until the handler catches up.
+ * Closing the stream drops the rest of data.
+ */
+final class ChunkedInputStream extends InputStream {
+
+    private final int capacity;
+    private final Queue<ByteBuffer> chunks = new ArrayDeque<>();
+    private int buffered;
+    private boolean ended;
+    private boolean closed;
+    private IOException failure;
+    private Runnable onAvailable;
+
+    /**
+     * @param capacity amount of buffered data the stream is considered full after
+     */
+    ChunkedInputStream(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the chunk waiting while the stream is full. The chunk is dropped if the stream is closed
+     *
+     * @param chunk chunk of data, it is not copied
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    synchronized void offer(ByteBuffer chunk) throws InterruptedIOException {
+        while (buffered >= capacity && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for stream handler");
+            }
+        }
+        if (closed || ended) {
+            return;
+        }
+        chunks.add(chunk);
+        buffered += chunk.remaining();
+        notifyAll();
+    }
+
+    /**
+     * Marks the end of data
+     */
+    synchronized void end() {
+        ended = true;
+        notifyAll();
+    }
+
+    /**
+     * Makes the reader fail once buffered data is read
+     *
+     * @param failure the reason
+     */
+    synchronized void abort(IOException failure) {
+        if (!ended) {
+            this.failure = failure;
+            ended = true;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return {@code true} if no more data should be added until the handler reads buffered one
+     */
+    synchronized boolean isFull() {
+        return buffered >= capacity && !closed;
+    }
+
+    /**
+     * Calls back once the stream is not full. Callback is called once
+     *
+     * @param callback callback, called in the handler thread unless the stream is not full already
+     */
+    void whenAvailable(Runnable callback) {
+        synchronized (this) {
+            if (isFull()) {
+                onAvailable = callback;
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        final int count;
+        final Runnable callback;
+        synchronized (this) {
+            final ByteBuffer chunk = awaitChunk();
+            if (chunk == null) {
+                return -1;
+            }
+            count = Math.min(len, chunk.remaining());
+            chunk.get(b, off, count);
+            if (!chunk.hasRemaining()) {
+                chunks.poll();
+            }
+            buffered -= count;
+            callback = takeCallback();
+        }
+        if (callback != null) {
+            callback.run();
+        }
+        return count;
+    }
+
+    /**
+     * Takes the rest of the next chunk as is, without copying
+     *
+     * @return chunk of data, {@code null} if the end of data is reached
+     * @throws IOException if the stream is aborted or closed
+     */
+    ByteBuffer readChunk() throws IOException {
+        final ByteBuffer chunk;
+        final Runnable callback;
+        synchronized (this) {
+            chunk = awaitChunk();
+            if (chunk == null) {
+                return null;
+            }
+            chunks.poll();
+            buffered -= chunk.remaining();
+            callback = takeCallback();
+        }
+        if (callback != null) {
+            callback.run();
+        }
+        return chunk;
+    }
+
+    private ByteBuffer awaitChunk() throws IOException {
+        while (chunks.isEmpty() && !ended && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+        }
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        final ByteBuffer chunk = chunks.peek();
+        if (chunk == null && failure != null) {
+            throw failure;
+        }
+        return chunk;
+    }
+
+    @Override
+    public synchronized int available() {
+        final ByteBuffer chunk = chunks.peek();
+        return chunk != null ? chunk.remaining() : 0;
+    }
+
+    @Override
+    public void close() {
+        final Runnable callback;
+        synchronized (this) {
+            closed = true;
+            chunks.clear();
+            buffered = 0;
+            notifyAll();
+            callback = takeCallback();
+        }
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    private Runnable takeCallback() {
+        if (onAvailable == null || buffered >= capacity && !closed) {
+            return null;
+        }
+        final Runnable callback = onAvailable;
+        onAvailable = null;
+        notifyAll();
+        return callback;
+    }
+}
@@ -20,8 +20,14 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static java.lang.String.format;
@@ -34,10 +40,23 @@ import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructo
 public class Client<T extends AbstractClientListener> {
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    protected T client;
+    private final ExecutorService executor = Sewy.createExecutor();
+    protected volatile T client;
+    private final Metrics metrics = new Metrics(() -> client != null ? client.getOutboundQueueSize() : 0);
 
-    protected Socket socket;
+    protected volatile Socket socket;
+
+    private final Object lock = new Object();
+    // settings applied to every listener of the client, so they survive reconnecting
+    private final Map<String, Setting<T, ?>> settings = new LinkedHashMap<>();
+    private final List<Consumer<ConnectionState>> stateListeners = new CopyOnWriteArrayList<>();
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+    private volatile ReconnectPolicy reconnect;
+    private String host;
+    private int port;
+    private Function<Socket, T> clientListenerConstructor;
+    private int attempts;
+    private boolean stopped;
 
     /**
      * Default constructor is to delay connecting to server
@@ -73,15 +92,190 @@ public class Client<T extends AbstractClientListener> {
      * @param clientListenerConstructor to provide constructor for client listener (see {@link me.bvn13.sewy.Client#Client(java.lang.String, int, java.lang.Class)})
      */
     public void connect(String host, int port, Function<Socket, T> clientListenerConstructor) {
+        synchronized (lock) {
+            this.host = host;
+            this.port = port;
+            this.clientListenerConstructor = clientListenerConstructor;
+        }
+        open();
+    }
+
+    private void open() {
+        final String host;
+        final int port;
+        final Function<Socket, T> clientListenerConstructor;
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            host = this.host;
+            port = this.port;
+            clientListenerConstructor = this.clientListenerConstructor;
+        }
+        changeState(ConnectionState.CONNECTING);
+        T listener = null;
         try {
             log.debug(format("Connecting to %s:%d", host, port));
             socket = new Socket(host, port);
-            client = clientListenerConstructor.apply(socket);
-            executor.execute(client);
-        } catch (IOException e) {
+            listener = clientListenerConstructor.apply(socket);
+            listener.setMetrics(metrics);
+            final boolean stoppedMeanwhile;
+            synchronized (lock) {
+                for (Setting<T, ?> setting : settings.values()) {
+                    setting.apply(listener);
+                }
+                client = listener;
+                stoppedMeanwhile = stopped;
+            }
+            if (stoppedMeanwhile) {
+                listener.stop();
+                return;
+            }
+            metrics.connectionOpened();
+            listener.whenStopped(metrics::connectionClosed);
+            executor.execute(listener::serve);
+            connected(listener);
+        } catch (Exception e) {
             log.error(format("Error while conversation with %s:%d", host, port), e);
-            stop();
+            if (reconnect == null) {
+                stop();
+                return;
+            }
+            if (listener != null) {
+                listener.stop();
+            }
+            closeSocket();
+            disconnected();
+            return;
         }
+        synchronized (lock) {
+            attempts = 0;
+        }
+        changeState(ConnectionState.CONNECTED);
+        final T opened = listener;
+        listener.whenStopped(() -> connectionLost(opened));
+    }
+
+    /**
+     * Called once the connection is established, before {@link ConnectionState#CONNECTED} state is reported
+     *
+     * @param listener listener of the new connection
+     * @throws IOException if failed to communicate, the connection is treated as failed
+     */
+    protected void connected(T listener) throws IOException {
+    }
+
+    private void connectionLost(T listener) {
+        synchronized (lock) {
+            if (listener != client) {
+                return;
+            }
+        }
+        disconnected();
+    }
+
+    private void disconnected() {
+        final ReconnectPolicy policy = reconnect;
+        final long delay;
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            delay = policy != null ? policy.delayMillis(attempts++) : -1;
+        }
+        changeState(ConnectionState.DISCONNECTED);
+        if (delay < 0) {
+            return;
+        }
+        log.debug(format("Reconnecting to %s:%d in %d ms", host, port, delay));
+        TimerWheel.shared().schedule(this::reopen, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // connecting blocks, so the timer thread only hands it over to the executor of the client
+    private void reopen() {
+        try {
+            executor.execute(this::open);
+        } catch (RejectedExecutionException e) {
+            log.debug("Client is stopped, reconnecting is cancelled");
+        }
+    }
+
+    private void changeState(ConnectionState state) {
+        synchronized (lock) {
+            if (this.state == state || this.state == ConnectionState.STOPPED) {
+                return;
+            }
+            this.state = state;
+        }
+        for (Consumer<ConnectionState> stateListener : stateListeners) {
+            try {
+                stateListener.accept(state);
+            } catch (RuntimeException e) {
+                log.error("Connection state listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Setting of the listener
+     *
+     * @param <T> type of the listener
+     * @param <E> type of exception thrown while applying the setting
+     */
+    @FunctionalInterface
+    protected interface Setting<T, E extends Exception> {
+        void apply(T listener) throws E;
+    }
+
+    /**
+     * Applies the setting to the listener of current connection and to listeners of connections established since then
+     *
+     * @param name    name of the setting, the setting replaces the previous one of the same name
+     * @param setting setting
+     * @throws E if failed to apply the setting to current listener
+     */
+    protected <E extends Exception> void configure(String name, Setting<T, E> setting) throws E {
+        final T client;
+        synchronized (lock) {
+            settings.put(name, setting);
+            client = this.client;
+        }
+        if (client != null) {
+            setting.apply(client);
+        }
+    }
+
+    /**
+     * Makes the client reconnect once the connection is lost or fails to be established.
+     * Applies to connections lost since then
+     *
+     * @param policy delays between attempts, {@code null} to stay disconnected
+     */
+    public void setReconnect(ReconnectPolicy policy) {
+        this.reconnect = policy;
+    }
+
+    /**
+     * @return reconnecting settings, {@code null} if reconnecting is off
+     */
+    public ReconnectPolicy getReconnect() {
+        return reconnect;
+    }
+
+    /**
+     * @return state of the connection
+     */
+    public ConnectionState getState() {
+        return state;
+    }
+
+    /**
+     * Calls back every time the state of the connection changes
+     *
+     * @param listener callback, called in the thread changing the state
+     */
+    public void whenStateChanged(Consumer<ConnectionState> listener) {
+        stateListeners.add(listener);
     }
 
     /**
@@ -89,17 +283,43 @@ public class Client<T extends AbstractClientListener> {
      */
     public void stop() {
         log.debug("Stopping client");
+        synchronized (lock) {
+            stopped = true;
+        }
+        changeState(ConnectionState.STOPPED);
+        final T client = this.client;
         if (client != null) {
             client.stop();
         }
+        closeSocket();
+        executor.shutdown();
+    }
+
+    private void closeSocket() {
         try {
+            final Socket socket = this.socket;
             if (socket != null) {
                 socket.close();
             }
         } catch (IOException e) {
             log.error("Failed to close socket");
         }
-        executor.shutdown();
+    }
+
+    /**
+     * Sets size of the largest frame accepted from server. The connection is closed once larger frame is received
+     *
+     * @param maxFrameSize size of the largest frame, {@link Sewy#getMaxFrameSize()} by default
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        configure("maxFrameSize", client -> client.setMaxFrameSize(maxFrameSize));
+    }
+
+    /**
+     * @return metrics of the client
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -107,7 +327,7 @@ public class Client<T extends AbstractClientListener> {
      * @return
      */
     public boolean isConnected() {
-        return socket != null && socket.isConnected();
+        return socket != null && socket.isConnected() && !socket.isClosed();
     }
 
     /**
@@ -132,10 +352,34 @@ public class Client<T extends AbstractClientListener> {
     }
 
     /**
-     * Writes line into socket ending with default separator '\n'.
+     * Reads one frame from socket according to listener framing (see {@link Sewy#getFraming()})
+     * @return frame bytes or {@code null} if the stream is ended
+     */
+    public byte[] readFrame() throws IOException {
+        return client.readFrame();
+    }
+
+    /**
+     * Writes frame into socket according to listener framing (see {@link Sewy#getFraming()})
+     * @param bytes frame payload
+     */
+    public void writeFrame(byte[] bytes) throws IOException {
+        client.writeFrame(bytes);
+    }
+
+    /**
+     * Writes line into socket as one frame according to listener framing (see {@link Sewy#getFraming()}).
      * @param data data to be sent into socket
      */
     public void writeLine(String data) {
         client.writeLine(data);
     }
+
+    /**
+     * Writes line into socket as one frame according to listener framing (see {@link Sewy#getFraming()}).
+     * @param data data to be sent into socket, encoded with {@link Sewy#getCharset()}
+     */
+    public void writeLine(CharSequence data) {
+        client.writeLine(data);
+    }
 }
@@ -0,0 +1,141 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs frames written by the listener into batch frames (see {@link CommandFrame#BATCH}) limited by {@link BatchingPolicy}.
+ * Thread safe, frames are batched in order of adding.
+ */
+final class CommandBatcher {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final CommandClientListener listener;
+    private final BatchingPolicy policy;
+
+    private PooledOutputStream batch;
+    private int count;
+    // distinguishes batches, so lingering flush does not send the batch started after the one it was scheduled for
+    private long generation;
+
+    /**
+     * @param listener listener to write batches with
+     * @param policy   limits of batches
+     */
+    CommandBatcher(CommandClientListener listener, BatchingPolicy policy) {
+        this.listener = listener;
+        this.policy = policy;
+    }
+
+    BatchingPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Adds the frame into the batch sending the batch if it is full
+     *
+     * @param flags         frame flags
+     * @param correlationId correlation id of the frame
+     * @param command       command to be serialized
+     * @param serializer    serializer to be used
+     * @throws IOException if failed to serialize the command or to send the batch
+     */
+    synchronized void add(int flags, long correlationId, AbstractCommand command, CommandSerializer serializer) throws IOException {
+        final PooledOutputStream entry = new PooledOutputStream(Sewy.getBufferPool());
+        try {
+            CommandFrame.writeHeader(entry, flags, correlationId);
+            if (command != null) {
+                serializer.serialize(command, entry);
+            }
+            if (batch != null && batch.size() + 5 + entry.size() > policy.getMaxBytes()) {
+                flush();
+            }
+            if (batch == null) {
+                start();
+            }
+            CommandFrame.writeLength(batch, entry.size());
+            entry.writeTo(batch);
+        } finally {
+            entry.discard();
+        }
+        if (++count >= policy.getMaxCount() || batch.size() >= policy.getMaxBytes()) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the batch collected so far
+     *
+     * @throws IOException if failed to send the batch
+     */
+    synchronized void flush() throws IOException {
+        if (batch == null) {
+            return;
+        }
+        listener.writeCommandFrame(take());
+    }
+
+    /**
+     * Drops the batch collected so far
+     */
+    synchronized void discard() {
+        if (batch != null) {
+            batch.discard();
+            batch = null;
+            count = 0;
+        }
+    }
+
+    private PooledBuffer take() {
+        final PooledBuffer frame = batch.toBuffer();
+        batch = null;
+        count = 0;
+        return frame;
+    }
+
+    private void start() throws IOException {
+        batch = new PooledOutputStream(Sewy.getBufferPool());
+        CommandFrame.writeHeader(batch, CommandFrame.BATCH, 0);
+        final long generation = ++this.generation;
+        TimerWheel.shared().schedule(() -> flushLingering(generation), policy.getMaxLinger().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs in the thread of the timer wheel, so the batch is only enqueued and written by a writer thread.
+     * The batch is enqueued holding the lock, so batches started afterwards do not overtake it
+     */
+    private synchronized void flushLingering(long generation) {
+        if (generation != this.generation || batch == null) {
+            return;
+        }
+        try {
+            listener.writeCommandFrameAsync(take()).whenComplete((nothing, e) -> {
+                if (e != null) {
+                    log.error("Failed to send batch", e);
+                }
+            });
+        } catch (IOException e) {
+            log.error("Failed to send batch", e);
+        }
+    }
+}
@@ -16,11 +16,21 @@
 package me.bvn13.sewy;
 
 import me.bvn13.sewy.command.AbstractCommand;
+import me.bvn13.sewy.command.FileReceivedCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructor;
@@ -33,10 +43,17 @@ import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructo
 public class CommandClient extends Client<CommandClientListener> {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
+    private volatile Duration callTimeout = Duration.ofSeconds(30);
+    // commands sent while disconnected, guarded by itself
+    private final Deque<AbstractCommand> buffered = new ArrayDeque<>();
+    // buffered commands are being sent, guarded by buffered
+    private boolean replaying;
+
     /**
      * Default constructor is to delay connecting to Server
      */
     public CommandClient() {
+        whenStateChanged(this::stateChanged);
     }
 
     /**
@@ -69,18 +86,276 @@ public class CommandClient extends Client<CommandClientListener> {
      */
     public CommandClient(String host, int port, Function<Socket, CommandClientListener> clientListenerConstructor) {
         log.debug("Creating client");
+        whenStateChanged(this::stateChanged);
         connect(host, port, clientListenerConstructor);
     }
 
     /**
-     * Sends command to server
+     * Sends command to server.
+     * Once {@link #setReconnect(ReconnectPolicy) reconnecting} is on, commands sent until the client is
+     * {@link ConnectionState#CONNECTED connected} are buffered and sent in order right after the client reconnects
      *
      * @param command command to be sent
      * @param <T>     generic type
-     * @throws IOException if any error occurred while sending
+     * @throws IOException if any error occurred while sending or the buffer is full
      */
     public <T extends AbstractCommand> void send(T command) throws IOException {
         log.debug("Start to send command: " + command);
+        final ReconnectPolicy policy = getReconnect();
+        if (policy == null) {
+            client.send(command);
+            return;
+        }
+        final CommandClientListener client;
+        synchronized (buffered) {
+            client = this.client;
+            if (replaying || getState() != ConnectionState.CONNECTED || client == null || !buffered.isEmpty()) {
+                if (buffered.size() >= policy.getBufferSize()) {
+                    throw new IOException("Client is disconnected and its buffer is full");
+                }
+                buffered.add(command);
+                return;
+            }
+        }
         client.send(command);
     }
+
+    /**
+     * Offers compression again and sends commands buffered while disconnected
+     */
+    @Override
+    protected void connected(CommandClientListener listener) throws IOException {
+        listener.offerCompression();
+        flush(listener);
+    }
+
+    // sends commands buffered after the connection was established but before it was reported
+    private void stateChanged(ConnectionState state) {
+        final CommandClientListener client = this.client;
+        if (state != ConnectionState.CONNECTED || client == null) {
+            return;
+        }
+        try {
+            flush(client);
+        } catch (IOException e) {
+            log.warn("Failed to send buffered commands, they wait for the client to reconnect", e);
+        }
+    }
+
+    /**
+     * Sends buffered commands without holding the lock, so {@link #send(AbstractCommand)} does not wait for the socket.
+     * Commands sent meanwhile are buffered and sent afterwards, so the order is kept
+     */
+    private void flush(CommandClientListener listener) throws IOException {
+        synchronized (buffered) {
+            if (replaying) {
+                // the thread replaying sends commands buffered since then too
+                return;
+            }
+            replaying = true;
+        }
+        final List<AbstractCommand> commands = new ArrayList<>();
+        int sent = 0;
+        try {
+            for (; ; ) {
+                synchronized (buffered) {
+                    if (buffered.isEmpty()) {
+                        replaying = false;
+                        return;
+                    }
+                    commands.addAll(buffered);
+                    buffered.clear();
+                }
+                for (; sent < commands.size(); sent++) {
+                    listener.send(commands.get(sent));
+                }
+                commands.clear();
+                sent = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (buffered) {
+                // commands not sent go back in front of the ones buffered meanwhile
+                for (int i = commands.size() - 1; i >= sent; i--) {
+                    buffered.addFirst(commands.get(i));
+                }
+                replaying = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return count of commands waiting for the client to reconnect
+     */
+    public int getBufferedCommandsCount() {
+        synchronized (buffered) {
+            return buffered.size();
+        }
+    }
+
+    /**
+     * Stops client gracefully dropping commands buffered while disconnected
+     */
+    @Override
+    public void stop() {
+        synchronized (buffered) {
+            if (!buffered.isEmpty()) {
+                log.warn("{} buffered commands are dropped", buffered.size());
+                buffered.clear();
+            }
+        }
+        super.stop();
+    }
+
+    /**
+     * Sends large data to server chunk by chunk,
+     * see {@link CommandClientListener#sendStream(AbstractCommand, InputStream)}
+     *
+     * @param command command describing the data
+     * @param data    data to be sent, read until the end but not closed
+     * @throws IOException if failed to read or to send the data
+     */
+    public void sendStream(AbstractCommand command, InputStream data) throws IOException {
+        client.sendStream(command, data);
+    }
+
+    /**
+     * Sends the file to server under its own name,
+     * see {@link CommandClientListener#sendFile(Path, String, Duration)}.
+     * Every answer of server is waited for during {@link #setCallTimeout(Duration) call timeout}
+     *
+     * @param file file to be sent
+     * @return confirmation of server
+     * @throws IOException if failed to read or to send the file, or server rejects it
+     */
+    public FileReceivedCommand sendFile(Path file) throws IOException {
+        return client.sendFile(file, file.getFileName().toString(), callTimeout);
+    }
+
+    /**
+     * Pings server and disconnects once it is idle, see {@link CommandClientListener#setHeartbeat(HeartbeatPolicy)}.
+     * Along with {@link #setReconnect(ReconnectPolicy) reconnecting} the client reconnects then
+     *
+     * @param policy heartbeat settings, {@code null} to turn heartbeats off
+     */
+    public void setHeartbeat(HeartbeatPolicy policy) {
+        configure("heartbeat", listener -> listener.setHeartbeat(policy));
+    }
+
+    /**
+     * Saves files sent by server into the directory, see {@link CommandClientListener#setFileDirectory(Path)}
+     *
+     * @param directory directory to save files into, {@code null} to refuse files
+     */
+    public void setFileDirectory(Path directory) {
+        setFileDirectory(directory, new FileTransferPolicy());
+    }
+
+    /**
+     * Saves files sent by server into the directory within limits of the policy,
+     * see {@link CommandClientListener#setFileDirectory(Path, FileTransferPolicy)}
+     *
+     * @param directory directory to save files into, {@code null} to refuse files
+     * @param policy    limits of files received
+     */
+    public void setFileDirectory(Path directory, FileTransferPolicy policy) {
+        Objects.requireNonNull(policy, "policy");
+        configure("fileDirectory", listener -> listener.setFileDirectory(directory, policy));
+    }
+
+    /**
+     * Sends command to server and waits for the response asynchronously during {@link #setCallTimeout(Duration) call timeout}.
+     * Many calls may be in flight at once on the same connection.
+     *
+     * @param command command to be sent
+     * @param <R>     type of the response
+     * @return future completed with the response of server
+     */
+    public <R extends AbstractCommand> CompletableFuture<R> call(AbstractCommand command) {
+        return call(command, callTimeout);
+    }
+
+    /**
+     * Sends command to server and waits for the response asynchronously.
+     * Many calls may be in flight at once on the same connection.
+     *
+     * @param command command to be sent
+     * @param timeout time to wait for the response
+     * @param <R>     type of the response
+     * @return future completed with the response of server
+     */
+    public <R extends AbstractCommand> CompletableFuture<R> call(AbstractCommand command, Duration timeout) {
+        return client.call(command, timeout);
+    }
+
+    /**
+     * Sets serializer used by this client instead of {@link Sewy#getSerializer()}
+     *
+     * @param serializer serializer, {@code null} to use the global one
+     */
+    public void setSerializer(CommandSerializer serializer) {
+        configure("serializer", listener -> listener.setSerializer(serializer));
+    }
+
+    /**
+     * Sets dispatcher routing commands of server to their executors
+     *
+     * @param dispatcher dispatcher, see {@link CommandClientListener#setDispatcher(CommandDispatcher)}
+     */
+    public void setDispatcher(CommandDispatcher dispatcher) {
+        configure("dispatcher", listener -> listener.setDispatcher(dispatcher));
+    }
+
+    /**
+     * Makes commands of server processed in the worker pool, see {@link CommandClientListener#setWorkers(WorkerPool)}
+     *
+     * @param workers worker pool, it is not shut down together with the client
+     */
+    public void setWorkers(WorkerPool workers) {
+        configure("workers", listener -> listener.setWorkers(workers));
+    }
+
+    /**
+     * Makes commands packed into batch frames, see {@link CommandClientListener#setBatching(BatchingPolicy)}
+     *
+     * @param policy limits of batches, {@code null} to send every command in its own frame
+     * @throws IOException if failed to send commands batched so far
+     */
+    public void setBatching(BatchingPolicy policy) throws IOException {
+        configure("batching", listener -> listener.setBatching(policy));
+    }
+
+    /**
+     * Offers server to compress frames larger than the threshold of the policy.
+     * Frames are sent as is until server agrees, server refuses unless it has compression set too
+     * (see {@link CommandServer#setCompression(CompressionPolicy)})
+     *
+     * @param policy compression settings, {@code null} to send frames as is
+     * @throws IOException if failed to send the offer
+     */
+    public void setCompression(CompressionPolicy policy) throws IOException {
+        configure("compression", listener -> listener.setCompression(policy));
+        final CommandClientListener client = this.client;
+        if (client != null) {
+            client.offerCompression();
+        }
+    }
+
+    /**
+     * Sends commands collected in the batch so far
+     *
+     * @throws IOException if failed to send the batch
+     */
+    public void flush() throws IOException {
+        client.flush();
+    }
+
+    /**
+     * Sets default time to wait for the response in {@link #call(AbstractCommand)}
+     *
+     * @param callTimeout time to wait for the response, 30 seconds by default
+     */
+    public void setCallTimeout(Duration callTimeout) {
+        this.callTimeout = callTimeout;
+    }
 }
@@ -16,21 +16,86 @@
 package me.bvn13.sewy;
 
 import me.bvn13.sewy.command.AbstractCommand;
-import org.apache.commons.lang3.SerializationUtils;
+import me.bvn13.sewy.command.FileAcceptCommand;
+import me.bvn13.sewy.command.FileDataCommand;
+import me.bvn13.sewy.command.FileOfferCommand;
+import me.bvn13.sewy.command.FileReceivedCommand;
+import me.bvn13.sewy.command.PingCommand;
+import me.bvn13.sewy.command.PongCommand;
+import me.bvn13.sewy.command.RejectCommand;
 
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.String.format;
-import static me.bvn13.sewy.Sewy.getSeparator;
 
 /**
  * Client listener describing protocol-oriented communication
  */
 public class CommandClientListener extends AbstractClientListener implements AbstractCommandExecutor {
+    // size of data chunk written, limited by max frame size as well
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // maximum length of the frame header: flags byte and varint id
+    private static final int MAX_HEADER_SIZE = 11;
+    // amount of data received the stream handler may fall behind for
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+    static final int DEFAULT_MAX_STREAMS = 16;
+
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<AbstractCommand>> calls = new ConcurrentHashMap<>();
+    private volatile CommandSerializer serializer;
+    private volatile CommandDispatcher dispatcher;
+    private volatile WorkerPool.Lane lane;
+    private volatile CommandBatcher batcher;
+    private volatile CompressionPolicy compression;
+    // set once opposite side agreed to receive compressed frames
+    private volatile boolean compressing;
+    // compressed frames are accepted once compression is agreed, even if it is turned off since then
+    private volatile boolean negotiated;
+    private final FrameCompressor compressor = new FrameCompressor();
+    private final Map<Long, ChunkedInputStream> streams = new ConcurrentHashMap<>();
+    private ExecutorService streamExecutor;
+    private volatile int maxStreams = DEFAULT_MAX_STREAMS;
+    private volatile FileTransfer files;
+    private volatile HeartbeatPolicy heartbeat;
+    private volatile TimerWheel.Timeout heartbeatTimeout;
+    private volatile long roundTripNanos = -1;
+
     public CommandClientListener(Socket socket) {
         super(socket);
+        // fails fast if framing set can not carry binary frames
+        Sewy.getCommandFraming();
+        whenStopped(this::failCalls);
+        whenStopped(() -> {
+            final CommandBatcher batcher = this.batcher;
+            if (batcher != null) {
+                batcher.discard();
+            }
+            compressor.end();
+        });
+        whenStopped(this::abortStreams);
+        whenStopped(() -> {
+            final TimerWheel.Timeout timeout = heartbeatTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        });
     }
 
     /**
@@ -41,51 +106,634 @@ public class CommandClientListener extends AbstractClientListener implements Abs
         for (Thread.yield(); !socket.isConnected() && !socket.isClosed(); Thread.yield()) {
         }
         while (socket.isConnected() && !socket.isClosed()) {
+            final byte[] line;
+            try {
+                line = readFrame();
+            } catch (IOException e) {
+                log.debug("Connection is broken", e);
+                stop();
+                break;
+            }
+            if (line == null) {
+                // the connection is closed
+                break;
+            }
+            if (line.length == 0) {
+                continue;
+            }
             try {
-                Thread.yield();
-                byte[] line = readBytes(getSeparator());
-                if (line == null || line.length == 0) {
-                    continue;
+                handleFrame(line);
+            } catch (InterruptedIOException e) {
+                log.debug("Listener is interrupted", e);
+                stop();
+                break;
+            } catch (Exception e) {
+                log.error("Failed to communicate!", e);
+            }
+        }
+    }
+
+    /**
+     * Deserializes command from the frame, executes it and sends the response back.
+     * Commands of the batch are handled one by one in order of packing
+     *
+     * @param frame frame received
+     * @throws IOException if failed to send the response
+     */
+    void handleFrame(byte[] frame) throws IOException {
+        CommandFrame commandFrame;
+        final List<CommandFrame> batch;
+        try {
+            commandFrame = CommandFrame.decode(frame);
+            if (commandFrame.is(CommandFrame.NEGOTIATION)) {
+                negotiate(commandFrame);
+                return;
+            }
+            if (commandFrame.is(CommandFrame.COMPRESSED)) {
+                if (!negotiated) {
+                    throw new IOException("Compressed frame is received while compression is not negotiated");
+                }
+                commandFrame = commandFrame.inflate(compressor, getMaxFrameSize());
+            }
+            batch = commandFrame.is(CommandFrame.BATCH) ? commandFrame.unpack() : null;
+        } catch (FrameTooLargeException e) {
+            rejectFrame(e);
+            throw e;
+        } catch (IOException e) {
+            metrics().decodeFailed();
+            throw e;
+        }
+        if (commandFrame.is(CommandFrame.STREAM) || commandFrame.is(CommandFrame.CHUNK)) {
+            receive(commandFrame);
+            return;
+        }
+        if (batch == null) {
+            handle(commandFrame);
+            return;
+        }
+        final WorkerPool.Lane lane = this.lane;
+        if (lane == null) {
+            for (CommandFrame entry : batch) {
+                handle(entry);
+            }
+            return;
+        }
+        // the whole batch takes one place in the lane, so the reading thread never waits in the middle of the batch
+        final CommandDispatcher dispatcher = this.dispatcher;
+        submit(lane, () -> {
+            for (CommandFrame entry : batch) {
+                try {
+                    final AbstractCommand command = readCommand(entry);
+                    if (command != null) {
+                        final boolean inline = dispatcher == null || dispatcher.modeOf(command) == CommandDispatcher.Mode.INLINE;
+                        execute(entry, command, inline ? null : dispatcher);
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to communicate!", e);
                 }
-                final Object command;
+            }
+        });
+    }
+
+    private void handle(CommandFrame commandFrame) throws IOException {
+        final AbstractCommand command = readCommand(commandFrame);
+        if (command == null) {
+            return;
+        }
+        final CommandDispatcher dispatcher = this.dispatcher;
+        final WorkerPool.Lane lane = this.lane;
+        final boolean inline = dispatcher == null || dispatcher.modeOf(command) == CommandDispatcher.Mode.INLINE;
+        if (lane != null) {
+            // every command passes the lane keeping the order, inline ones just skip the hop to the dispatcher
+            submit(lane, () -> {
                 try {
-                    command = SerializationUtils.deserialize(line);
-                } catch (Throwable e) {
-                    log.warn("Deserialization exception occurred!", e);
-                    continue;
+                    execute(commandFrame, command, inline ? null : dispatcher);
+                } catch (Exception e) {
+                    log.error("Failed to communicate!", e);
                 }
-                if (command == null) {
-                    continue;
+            });
+            return;
+        }
+        if (inline) {
+            execute(commandFrame, command, null);
+            return;
+        }
+        try {
+            dispatcher.workers().execute(() -> {
+                try {
+                    execute(commandFrame, command, dispatcher);
+                } catch (Exception e) {
+                    log.error("Failed to communicate!", e);
                 }
-                if (!Sewy.getRegisteredDataTypes().contains(command.getClass())) {
-                    log.error("Unexpected command received");
-                    continue;
+            });
+        } catch (RejectedExecutionException e) {
+            log.error(format("Failed to execute %s", command), e);
+            reject(commandFrame, command, e);
+        }
+    }
+
+    /**
+     * Deserializes the command completing the call if the frame is the response
+     *
+     * @return command to be executed, {@code null} if there is nothing to execute
+     */
+    private AbstractCommand readCommand(CommandFrame commandFrame) {
+        final AbstractCommand command;
+        try {
+            command = commandFrame.readCommand(serializer());
+        } catch (Throwable e) {
+            metrics().deserializationFailed();
+            log.warn("Deserialization exception occurred!", e);
+            if (commandFrame.is(CommandFrame.RESPONSE)) {
+                completeCall(commandFrame.getCorrelationId(), null, e);
+            }
+            return null;
+        }
+        if (command != null && !Sewy.isRegistered(command.getClass())) {
+            metrics().deserializationFailed();
+            log.error("Unexpected command received");
+            if (commandFrame.is(CommandFrame.RESPONSE)) {
+                completeCall(commandFrame.getCorrelationId(), null, new IOException("Unexpected response: " + command.getClass().getName()));
+            }
+            return null;
+        }
+        if (commandFrame.is(CommandFrame.RESPONSE)) {
+            completeCall(commandFrame.getCorrelationId(), command, null);
+            return null;
+        }
+        if (command != null) {
+            log.debug("Command received: " + command.getClass());
+        }
+        return command;
+    }
+
+    /**
+     * Opens the stream or passes the chunk to the stream handler
+     */
+    private void receive(CommandFrame frame) throws IOException {
+        final long streamId = frame.getCorrelationId();
+        if (!frame.is(CommandFrame.CHUNK)) {
+            openStream(frame, readCommand(frame));
+            return;
+        }
+        final ChunkedInputStream stream = streams.get(streamId);
+        if (stream == null) {
+            // the handler has finished already
+            log.debug("Chunk of unknown or closed stream {} received", streamId);
+            return;
+        }
+        final ByteBuffer data = frame.data();
+        if (frame.is(CommandFrame.STREAM)) {
+            stream.abort(new IOException("Stream is aborted by opposite side"));
+        } else if (data.hasRemaining()) {
+            stream.offer(data);
+        } else {
+            stream.end();
+        }
+    }
+
+    private void openStream(CommandFrame frame, AbstractCommand command) throws IOException {
+        final long streamId = frame.getCorrelationId();
+        final boolean answered = frame.is(CommandFrame.REQUEST);
+        if (command == null) {
+            log.warn("Stream {} without command is ignored", streamId);
+            return;
+        }
+        if (streams.size() >= maxStreams) {
+            log.warn("Stream {} is refused, {} streams are open already", streamId, streams.size());
+            reject(frame, command, new IOException("Too many streams are open"));
+            return;
+        }
+        final ChunkedInputStream data = new ChunkedInputStream(STREAM_BUFFER_SIZE);
+        final ChunkedInputStream opened = streams.putIfAbsent(streamId, data);
+        if (opened != null) {
+            // chunks of both streams can not be told apart anymore, so the open one is aborted too
+            log.warn("Stream {} is refused, its id is in use", streamId);
+            streams.remove(streamId, opened);
+            opened.abort(new IOException("Stream id is reused by opposite side"));
+            return;
+        }
+        streamExecutor().execute(() -> {
+            AbstractCommand response = null;
+            final long started = System.nanoTime();
+            try {
+                final FileTransfer files = this.files;
+                response = files != null && command instanceof FileDataCommand
+                        ? files.receive((FileDataCommand) command, data)
+                        : onStream(command, data);
+            } catch (Exception e) {
+                log.error("Failed to handle the stream!", e);
+                if (answered && Sewy.isRegistered(RejectCommand.class)) {
+                    response = new RejectCommand(format("Failed to handle %s: %s", command.getClass().getSimpleName(), e));
                 }
-                log.debug("Command received: " + command.getClass());
-                if (!(command instanceof AbstractCommand)) {
-                    log.warn("Incorrect command received: " + command);
-                    continue;
+            } finally {
+                streams.remove(streamId, data);
+                data.close();
+                metrics().commandProcessed(command.getClass(), System.nanoTime() - started);
+            }
+            try {
+                if (answered) {
+                    write(CommandFrame.RESPONSE, streamId, response);
+                } else if (response != null) {
+                    write(0, 0, response);
                 }
-                final Serializable response = onCommand((AbstractCommand) command);
-                log.debug(format("Response for %s is: %s", command, response));
-                writeBytes(SerializationUtils.serialize(response), getSeparator());
             } catch (Exception e) {
                 log.error("Failed to communicate!", e);
             }
+        });
+    }
+
+    private synchronized ExecutorService streamExecutor() {
+        if (streamExecutor == null) {
+            streamExecutor = Sewy.createExecutor();
+        }
+        return streamExecutor;
+    }
+
+    private void abortStreams() {
+        final IOException closed = new IOException("Connection is closed");
+        for (Long streamId : streams.keySet()) {
+            final ChunkedInputStream stream = streams.get(streamId);
+            if (stream != null) {
+                stream.abort(closed);
+            }
+        }
+        synchronized (this) {
+            if (streamExecutor != null) {
+                streamExecutor.shutdown();
+            }
         }
     }
 
+    private static void submit(WorkerPool.Lane lane, Runnable task) throws InterruptedIOException {
+        try {
+            lane.submit(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for worker");
+        }
+    }
+
+    /**
+     * Executes the command measuring processing time
+     *
+     * @param command    incoming command
+     * @param dispatcher dispatcher to execute the command with, {@code null} to pass the command to {@link #onCommand(AbstractCommand)}
+     * @return response
+     */
+    private AbstractCommand process(AbstractCommand command, CommandDispatcher dispatcher) {
+        final long started = System.nanoTime();
+        try {
+            if (heartbeat != null) {
+                if (command instanceof PingCommand) {
+                    return new PongCommand((PingCommand) command);
+                }
+                if (command instanceof PongCommand) {
+                    pong((PongCommand) command);
+                    return null;
+                }
+            }
+            final FileTransfer files = this.files;
+            if (files != null && command instanceof FileOfferCommand) {
+                return files.offer((FileOfferCommand) command);
+            }
+            return dispatcher != null ? dispatcher.dispatch(command) : onCommand(command);
+        } finally {
+            metrics().commandProcessed(command.getClass(), System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Executes the command and sends the response back.
+     * Request failed to be executed is answered with {@link RejectCommand} anyway, so the caller does not wait for nothing
+     */
+    private void execute(CommandFrame commandFrame, AbstractCommand command, CommandDispatcher dispatcher) throws IOException {
+        final AbstractCommand response;
+        try {
+            response = process(command, dispatcher);
+        } catch (RuntimeException e) {
+            log.error(format("Failed to execute %s", command), e);
+            reject(commandFrame, command, e);
+            return;
+        }
+        respond(commandFrame, command, response);
+    }
+
+    /**
+     * Answers the request failed to be executed with {@link RejectCommand} if it is registered, with empty response otherwise
+     */
+    private void reject(CommandFrame commandFrame, AbstractCommand command, Exception cause) throws IOException {
+        if (!commandFrame.is(CommandFrame.REQUEST)) {
+            return;
+        }
+        final AbstractCommand rejection = Sewy.isRegistered(RejectCommand.class)
+                ? new RejectCommand(format("Failed to execute %s: %s", command.getClass().getSimpleName(), cause))
+                : null;
+        write(CommandFrame.RESPONSE, commandFrame.getCorrelationId(), rejection);
+    }
+
+    private void respond(CommandFrame commandFrame, AbstractCommand command, AbstractCommand response) throws IOException {
+        log.debug(format("Response for %s is: %s", command, response));
+        if (commandFrame.is(CommandFrame.REQUEST)) {
+            write(CommandFrame.RESPONSE, commandFrame.getCorrelationId(), response);
+        } else if (response != null) {
+            write(0, 0, response);
+        }
+    }
+
+    /**
+     * Command frames are binary, so they are length-prefixed unless another prefixed framing is set explicitly
+     *
+     * @return {@link Sewy#getCommandFraming()}
+     */
+    @Override
+    protected Framing framing() {
+        return Sewy.getCommandFraming();
+    }
+
+    /**
+     * Sets serializer used by this listener instead of {@link Sewy#getSerializer()}
+     *
+     * @param serializer serializer, {@code null} to use the global one
+     */
+    public void setSerializer(CommandSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * @return serializer used to read and write commands
+     */
+    protected CommandSerializer serializer() {
+        final CommandSerializer serializer = this.serializer;
+        return serializer != null ? serializer : Sewy.getSerializer();
+    }
+
+    /**
+     * Sets dispatcher routing incoming commands to their executors.
+     * {@link CommandDispatcher.Mode#INLINE} executors are called from {@link #onCommand(AbstractCommand)},
+     * so overriding it bypasses them
+     *
+     * @param dispatcher dispatcher, {@code null} to handle commands in {@link #onCommand(AbstractCommand)} only
+     */
+    public void setDispatcher(CommandDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Makes incoming commands processed in the worker pool instead of the thread reading the connection.
+     * Commands are processed one by one in order of receiving. Once the lane of the connection is full
+     * reading is suspended until the commands are processed.
+     * Both {@link CommandDispatcher.Mode#INLINE} and {@link CommandDispatcher.Mode#WORKER} executors of the dispatcher
+     * are run in the pool then, so they keep the order too.
+     * Applies to commands received since then.
+     *
+     * @param workers worker pool, {@code null} to process commands in the reading thread
+     */
+    public void setWorkers(WorkerPool workers) {
+        this.lane = workers != null ? workers.newLane() : null;
+    }
+
+    /**
+     * Allows frames written since then to be compressed if opposite side agrees.
+     * Server side listener waits for the offer of the client, see {@link CommandClient#setCompression(CompressionPolicy)}.
+     * Compressed frames of opposite side are accepted only once compression is negotiated.
+     *
+     * @param policy compression settings, {@code null} to write frames as is
+     */
+    public void setCompression(CompressionPolicy policy) {
+        this.compression = policy;
+        if (policy == null) {
+            compressing = false;
+        }
+    }
+
+    /**
+     * @return compression settings, {@code null} if compression is off
+     */
+    public CompressionPolicy getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return {@code true} if opposite side agreed to receive compressed frames
+     */
+    public boolean isCompressing() {
+        return compressing;
+    }
+
+    /**
+     * Offers opposite side to compress frames with codecs allowed by {@link #setCompression(CompressionPolicy)}.
+     * Frames are written as is until opposite side answers
+     */
+    void offerCompression() throws IOException {
+        if (compression != null) {
+            writeFrame(negotiationFrame(CommandFrame.REQUEST, CompressionPolicy.DEFLATE));
+        }
+    }
+
+    private void negotiate(CommandFrame frame) throws IOException {
+        final boolean agreed = compression != null
+                && Arrays.asList(frame.readText().split(",")).contains(CompressionPolicy.DEFLATE);
+        if (frame.is(CommandFrame.REQUEST)) {
+            writeFrame(negotiationFrame(CommandFrame.RESPONSE, agreed ? CompressionPolicy.DEFLATE : ""));
+        }
+        compressing = agreed;
+        if (agreed) {
+            negotiated = true;
+        }
+        log.debug("Compression is {}", agreed ? "negotiated" : "refused");
+    }
+
+    private static PooledBuffer negotiationFrame(int flags, String codecs) throws IOException {
+        final PooledOutputStream frame = new PooledOutputStream(Sewy.getBufferPool());
+        CommandFrame.writeHeader(frame, CommandFrame.NEGOTIATION | flags, 0);
+        frame.write(codecs.getBytes(StandardCharsets.UTF_8));
+        return frame.toBuffer();
+    }
+
+    /**
+     * Turns heartbeats on: {@link PingCommand} is sent once nothing is written for a while,
+     * and the connection is closed once nothing is read or written within idle timeouts.
+     * Checks of every connection are run by one shared timer thread.
+     * Since then the listener answers {@link PingCommand} with {@link PongCommand} itself
+     * and measures round-trip time with {@link PongCommand} instead of passing them to {@link #onCommand(AbstractCommand)}.
+     * Both commands must be registered, opposite side must answer pings too.
+     *
+     * @param policy heartbeat settings, {@code null} to turn heartbeats off
+     */
+    public void setHeartbeat(HeartbeatPolicy policy) {
+        final TimerWheel.Timeout previous = heartbeatTimeout;
+        if (previous != null) {
+            previous.cancel();
+        }
+        this.heartbeat = policy;
+        if (policy != null && !isStopped()) {
+            scheduleHeartbeat(policy, 0);
+        }
+    }
+
+    /**
+     * @return heartbeat settings, {@code null} if heartbeats are off
+     */
+    public HeartbeatPolicy getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * @return round-trip time measured with the last heartbeat, {@code null} if it is not measured yet
+     */
+    public Duration getRoundTripTime() {
+        final long roundTrip = roundTripNanos;
+        return roundTrip >= 0 ? Duration.ofNanos(roundTrip) : null;
+    }
+
+    private void scheduleHeartbeat(HeartbeatPolicy policy, long delayNanos) {
+        heartbeatTimeout = TimerWheel.shared().schedule(() -> checkHeartbeat(policy), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Closes the idle connection or pings opposite side, runs in the timer thread
+     */
+    private void checkHeartbeat(HeartbeatPolicy policy) {
+        if (isStopped() || heartbeat != policy) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long readIdle = now - lastReadNanos();
+        final long writeIdle = now - lastWriteNanos();
+        final long readLeft = remaining(policy.getReadIdleTimeout(), readIdle);
+        final long writeLeft = remaining(policy.getWriteIdleTimeout(), writeIdle);
+        if (readLeft <= 0 || writeLeft <= 0) {
+            log.warn("Connection is idle for {} ms, closing", TimeUnit.NANOSECONDS.toMillis(readLeft <= 0 ? readIdle : writeIdle));
+            metrics().idleTimedOut();
+            stop();
+            return;
+        }
+        long pingLeft = remaining(policy.getPingInterval(), writeIdle);
+        if (pingLeft <= 0) {
+            ping();
+            pingLeft = policy.getPingInterval().toNanos();
+        }
+        scheduleHeartbeat(policy, Math.min(pingLeft, Math.min(readLeft, writeLeft)));
+    }
+
+    private static long remaining(Duration timeout, long idle) {
+        return timeout.isZero() ? Long.MAX_VALUE : timeout.toNanos() - idle;
+    }
+
+    private void ping() {
+        // the timer thread must never wait for the socket, so the ping is written by a writer thread
+        try {
+            writeCommandFrameAsync(encode(0, 0, new PingCommand()))
+                    .whenComplete((nothing, e) -> {
+                        if (e != null) {
+                            log.debug("Failed to send ping", e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.debug("Failed to send ping", e);
+        }
+    }
+
+    private void pong(PongCommand pong) {
+        // the ping carries the time of this side, so clocks of both sides need not be in sync
+        final long roundTrip = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - pong.getPingTime()));
+        roundTripNanos = roundTrip;
+        metrics().roundTrip(roundTrip);
+        log.debug("Round-trip time is {} ms", TimeUnit.NANOSECONDS.toMillis(roundTrip));
+    }
+
+    /**
+     * Makes commands and responses written since then packed into batch frames.
+     * Every command waits in the batch until the batch is full or its linger time is out,
+     * {@link #flush()} sends the batch immediately.
+     * Opposite side must be able to unpack batches, that is to be of this version or later.
+     *
+     * @param policy limits of batches, {@code null} to write every command in its own frame
+     */
+    public void setBatching(BatchingPolicy policy) throws IOException {
+        final CommandBatcher previous = this.batcher;
+        this.batcher = policy != null ? new CommandBatcher(this, policy) : null;
+        if (previous != null) {
+            previous.flush();
+        }
+    }
+
+    /**
+     * @return limits of batches, {@code null} if batching is off
+     */
+    public BatchingPolicy getBatching() {
+        final CommandBatcher batcher = this.batcher;
+        return batcher != null ? batcher.policy() : null;
+    }
+
+    /**
+     * Sends commands collected in the batch so far
+     *
+     * @throws IOException if failed to send the batch
+     */
+    public void flush() throws IOException {
+        final CommandBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
+    /**
+     * @return count of commands received but not processed yet
+     */
+    public int getPendingCommandsCount() {
+        final WorkerPool.Lane lane = this.lane;
+        return lane != null ? lane.size() : 0;
+    }
+
+    /**
+     * @return {@code true} if no more commands may be accepted for processing at the moment
+     */
+    boolean isSaturated() {
+        final WorkerPool.Lane lane = this.lane;
+        return lane != null && lane.isFull() || fullStream() != null;
+    }
+
+    private ChunkedInputStream fullStream() {
+        for (ChunkedInputStream stream : streams.values()) {
+            if (stream.isFull()) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calls back once more commands may be accepted for processing
+     *
+     * @param callback callback
+     */
+    void whenUnsaturated(Runnable callback) {
+        final WorkerPool.Lane lane = this.lane;
+        if (lane != null && lane.isFull()) {
+            lane.whenAvailable(() -> whenUnsaturated(callback));
+            return;
+        }
+        final ChunkedInputStream stream = fullStream();
+        if (stream != null) {
+            stream.whenAvailable(() -> whenUnsaturated(callback));
+        } else {
+            callback.run();
+        }
+    }
 
     /**
      * Method to receive the data command-by-command incoming from clients
-     * You need to override it
+     * You need to override it unless {@link #setDispatcher(CommandDispatcher) dispatcher} is set
      *
      * @param command serialized command to be checked by using
      *                <p>{@code instanceof ConcreteCommandClass}</p>
      * @return server answer on client command
      */
     public AbstractCommand onCommand(AbstractCommand command) {
-        return null;
+        final CommandDispatcher dispatcher = this.dispatcher;
+        return dispatcher != null ? dispatcher.dispatch(command) : null;
     }
 
     /**
@@ -96,7 +744,308 @@ public class CommandClientListener extends AbstractClientListener implements Abs
      */
     public <T extends AbstractCommand> void send(T command) throws IOException {
         log.debug("Start to send command: {}", command);
-        writeBytes(SerializationUtils.serialize(command), getSeparator());
+        write(0, 0, command);
+    }
+
+    /**
+     * Method to receive large data incoming from {@link #sendStream(AbstractCommand, InputStream)} of opposite side.
+     * It is called in its own thread once the stream is opened, so data is read as it arrives chunk by chunk.
+     * Use {@link java.nio.channels.Channels#newChannel(InputStream)} to read the data as {@link java.nio.channels.ReadableByteChannel}.
+     * The rest of data is dropped once the method returns.
+     * You need to override it to accept streams
+     *
+     * @param command command describing the stream
+     * @param data    data of the stream, fails to read if opposite side aborts the stream or the connection is closed
+     * @return answer sent to opposite side, {@code null} for none
+     */
+    public AbstractCommand onStream(AbstractCommand command, InputStream data) throws IOException {
+        log.warn("Stream of {} is dropped, onStream is not overridden", command.getClass());
+        return null;
+    }
+
+    /**
+     * Sets count of streams of opposite side handled at once. Streams opened beyond are refused:
+     * {@link #callStream(AbstractCommand, InputStream, Duration)} of opposite side gets {@link RejectCommand} if it is registered.
+     *
+     * @param maxStreams count of streams, {@value #DEFAULT_MAX_STREAMS} by default
+     */
+    public void setMaxStreams(int maxStreams) {
+        if (maxStreams < 1) {
+            throw new IllegalArgumentException("Wrong max streams: " + maxStreams);
+        }
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * @return count of streams of opposite side handled at once
+     */
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    /**
+     * Sends large data to opposite side chunk by chunk, so it never takes more than one chunk in memory.
+     * Waits until every chunk is written, so it must not be called in the event loop.
+     * Chunks are no larger than {@link #getMaxFrameSize()} of this listener,
+     * it must not exceed the one of opposite side.
+     *
+     * @param command command describing the data, passed to {@link #onStream(AbstractCommand, InputStream)} of opposite side
+     * @param data    data to be sent, read until the end but not closed
+     * @throws IOException if failed to read or to send the data, opposite side is notified the stream is aborted
+     */
+    public void sendStream(AbstractCommand command, InputStream data) throws IOException {
+        log.debug("Start to send stream: {}", command);
+        writeStream(0, correlationIds.incrementAndGet(), command, data);
+    }
+
+    /**
+     * Sends large data to opposite side chunk by chunk like {@link #sendStream(AbstractCommand, InputStream)} does
+     * and waits for the response asynchronously
+     *
+     * @param command command describing the data, passed to {@link #onStream(AbstractCommand, InputStream)} of opposite side
+     * @param data    data to be sent, read until the end but not closed
+     * @param timeout time to wait for the response once the data is sent
+     * @param <R>     type of the response
+     * @return future completed with the response returned from {@link #onStream(AbstractCommand, InputStream)} of opposite side
+     * @throws IOException if failed to read or to send the data, opposite side is notified the stream is aborted
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends AbstractCommand> CompletableFuture<R> callStream(AbstractCommand command, InputStream data, Duration timeout) throws IOException {
+        log.debug("Start to call stream: {}", command);
+        final long correlationId = correlationIds.incrementAndGet();
+        final CompletableFuture<AbstractCommand> call = new CompletableFuture<>();
+        calls.put(correlationId, call);
+        try {
+            writeStream(CommandFrame.REQUEST, correlationId, command, data);
+        } catch (IOException | RuntimeException e) {
+            calls.remove(correlationId);
+            throw e;
+        }
+        if (isStopped()) {
+            // the calls might be failed before this one is written
+            completeCall(correlationId, null, new IOException("Connection is closed"));
+        }
+        call.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, e) -> calls.remove(correlationId));
+        return (CompletableFuture<R>) call;
+    }
+
+    private void writeStream(int flags, long streamId, AbstractCommand command, InputStream data) throws IOException {
+        Objects.requireNonNull(command, "command");
+        // the stream must not overtake commands waiting in the batch
+        flush();
+        writeCommandFrame(encode(CommandFrame.STREAM | flags, streamId, command));
+        try {
+            final int chunkSize = Math.max(1, Math.min(CHUNK_SIZE, getMaxFrameSize() - MAX_HEADER_SIZE));
+            PooledBuffer chunk;
+            while ((chunk = readChunk(streamId, data, chunkSize)) != null) {
+                await(writeFrameAsync(compressIfNegotiated(chunk), Runnable::run));
+            }
+            writeCommandFrame(encode(CommandFrame.CHUNK, streamId, null));
+        } catch (IOException | RuntimeException e) {
+            try {
+                writeCommandFrame(encode(CommandFrame.STREAM | CommandFrame.CHUNK, streamId, null));
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Saves files sent by {@link #sendFile(Path, String, Duration)} of opposite side into the directory.
+     * {@link FileOfferCommand} and {@link FileDataCommand} are handled by the listener itself since then,
+     * they must be registered along with {@link FileAcceptCommand}, {@link FileReceivedCommand} and {@link RejectCommand}
+     * on both sides.
+     * Files up to 1 GiB are accepted, existing files are not overwritten.
+     *
+     * @param directory directory to save files into, {@code null} to refuse files
+     */
+    public void setFileDirectory(Path directory) {
+        setFileDirectory(directory, new FileTransferPolicy());
+    }
+
+    /**
+     * Saves files sent by {@link #sendFile(Path, String, Duration)} of opposite side into the directory
+     * like {@link #setFileDirectory(Path)} does within limits of the policy
+     *
+     * @param directory directory to save files into, {@code null} to refuse files
+     * @param policy    limits of files received
+     */
+    public void setFileDirectory(Path directory, FileTransferPolicy policy) {
+        Objects.requireNonNull(policy, "policy");
+        this.files = directory != null ? new FileTransfer(directory, policy) : null;
+    }
+
+    /**
+     * @return directory files received are saved into, {@code null} if files are refused
+     */
+    public Path getFileDirectory() {
+        final FileTransfer files = this.files;
+        return files != null ? files.directory() : null;
+    }
+
+    /**
+     * Sends the file to opposite side having {@link #setFileDirectory(Path) file directory} set.
+     * The transfer resumes from the data received in previous attempts,
+     * the file is saved once its checksum matches.
+     * Waits until the file is sent, so it must not be called in the event loop.
+     *
+     * @param file    file to be sent
+     * @param name    name of the file for opposite side, it must be a plain file name
+     * @param timeout time to wait for every answer of opposite side
+     * @return confirmation of opposite side
+     * @throws IOException if failed to read or to send the file, or opposite side rejects it
+     */
+    public FileReceivedCommand sendFile(Path file, String name, Duration timeout) throws IOException {
+        log.debug("Start to send file: {}", file);
+        return FileTransfer.send(this, file, name, timeout);
+    }
+
+    /**
+     * @return chunk frame filled with data, {@code null} if there is no more data
+     */
+    private static PooledBuffer readChunk(long streamId, InputStream data, int chunkSize) throws IOException {
+        final PooledOutputStream frame = new PooledOutputStream(Sewy.getBufferPool(), chunkSize + MAX_HEADER_SIZE);
+        try {
+            CommandFrame.writeHeader(frame, CommandFrame.CHUNK, streamId);
+            int count = 0;
+            for (int read = 0; read >= 0 && count < chunkSize; ) {
+                read = frame.readFrom(data, chunkSize - count);
+                count += Math.max(read, 0);
+            }
+            if (count == 0) {
+                frame.discard();
+                return null;
+            }
+            return frame.toBuffer();
+        } catch (IOException | RuntimeException e) {
+            frame.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends command to opposite side and waits for the response asynchronously.
+     * Many calls may be in flight at once, responses are matched with correlation id.
+     *
+     * @param command command to be sent
+     * @param timeout time to wait for the response
+     * @param <R>     type of the response
+     * @return future completed with the response returned from
+     * {@link CommandClientListener#onCommand(AbstractCommand)} of opposite side (may be {@code null}),
+     * or exceptionally if failed to send the command, the connection is closed or the time is out
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends AbstractCommand> CompletableFuture<R> call(AbstractCommand command, Duration timeout) {
+        log.debug("Start to call command: {}", command);
+        final long correlationId = correlationIds.incrementAndGet();
+        final CompletableFuture<AbstractCommand> call = new CompletableFuture<>();
+        calls.put(correlationId, call);
+        call.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, e) -> calls.remove(correlationId));
+        if (isStopped()) {
+            call.completeExceptionally(new IOException("Connection is closed"));
+            return (CompletableFuture<R>) call;
+        }
+        try {
+            write(CommandFrame.REQUEST, correlationId, command);
+        } catch (Exception e) {
+            call.completeExceptionally(e);
+        }
+        return (CompletableFuture<R>) call;
+    }
+
+    /**
+     * @return count of calls waiting for the response
+     */
+    public int getPendingCallsCount() {
+        return calls.size();
+    }
+
+    private void completeCall(long correlationId, AbstractCommand response, Throwable error) {
+        final CompletableFuture<AbstractCommand> call = calls.remove(correlationId);
+        if (call == null) {
+            log.warn("Response for unknown or timed out call {} received", correlationId);
+            return;
+        }
+        if (error != null) {
+            call.completeExceptionally(error);
+        } else {
+            call.complete(response);
+        }
+    }
+
+    private void failCalls() {
+        final IOException closed = new IOException("Connection is closed");
+        for (Long correlationId : calls.keySet()) {
+            final CompletableFuture<AbstractCommand> call = calls.remove(correlationId);
+            if (call != null) {
+                call.completeExceptionally(closed);
+            }
+        }
+    }
+
+    /**
+     * Writes the command in its own frame or adds it into the batch
+     */
+    private void write(int flags, long correlationId, AbstractCommand command) throws IOException {
+        final CommandBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.add(flags, correlationId, command, serializer());
+        } else {
+            writeCommandFrame(encode(flags, correlationId, command));
+        }
+    }
+
+    /**
+     * Writes the frame compressing it if negotiated
+     *
+     * @param frame frame between position and limit of heap buffer, released once written
+     */
+    void writeCommandFrame(PooledBuffer frame) throws IOException {
+        writeFrame(compressIfNegotiated(frame));
+    }
+
+    /**
+     * Enqueues the frame compressing it if negotiated, never waiting for the socket:
+     * the frame is written by a writer thread unless another thread is writing at the moment
+     *
+     * @param frame frame between position and limit of heap buffer, released once written
+     * @return future completed once the frame is written
+     */
+    CompletableFuture<Void> writeCommandFrameAsync(PooledBuffer frame) throws IOException {
+        return writeFrameAsync(compressIfNegotiated(frame), writers());
+    }
+
+    private PooledBuffer compressIfNegotiated(PooledBuffer frame) throws IOException {
+        final CompressionPolicy policy = compression;
+        if (!compressing || policy == null) {
+            return frame;
+        }
+        try {
+            return CommandFrame.compress(frame, compressor, policy);
+        } catch (IOException | RuntimeException e) {
+            frame.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Serializes the command into the frame right after the header using pooled buffer
+     */
+    private PooledBuffer encode(int flags, long correlationId, AbstractCommand command) throws IOException {
+        final PooledOutputStream frame = new PooledOutputStream(Sewy.getBufferPool());
+        try {
+            CommandFrame.writeHeader(frame, flags, correlationId);
+            if (command != null) {
+                serializer().serialize(command, frame);
+            }
+            return frame.toBuffer();
+        } catch (IOException | RuntimeException e) {
+            frame.discard();
+            throw e;
+        }
     }
 
 }
@@ -0,0 +1,287 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Set of {@link CommandClient} connections to one or more servers used as one client.
+ * Every command is sent through one of connected clients chosen according to {@link Balancing},
+ * so load is spread over many TCP connections and reading threads.
+ * Broken connections are replaced in background, commands are sent through the rest meanwhile.
+ * Commands sent through different connections may be processed by servers in any order.
+ */
+public class CommandClientPool {
+
+    /**
+     * How the connection for the next command is chosen
+     */
+    public enum Balancing {
+        /**
+         * Connections are used one by one
+         */
+        ROUND_ROBIN,
+        /**
+         * Connection having the least count of calls waiting for the response and frames waiting to be written
+         */
+        LEAST_PENDING
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final List<InetSocketAddress> endpoints;
+    private final Function<Socket, CommandClientListener> clientListenerConstructor;
+    private final Consumer<CommandClient> configurer;
+    private final Balancing balancing;
+    private final AtomicReferenceArray<CommandClient> clients;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    // replaces broken connections, connecting blocks
+    private final ExecutorService executor = Sewy.createExecutor();
+
+    private volatile Duration reconnectDelay = Duration.ofSeconds(1);
+    private volatile Duration callTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Connects to the server immediately
+     *
+     * @param host        host to connect to
+     * @param port        port to be used while connecting
+     * @param connections count of connections
+     */
+    public CommandClientPool(String host, int port, int connections) {
+        this(Collections.singletonList(InetSocketAddress.createUnresolved(host, port)), connections,
+                Balancing.LEAST_PENDING, CommandClientListener::new, client -> {});
+    }
+
+    /**
+     * Connects to servers immediately. Connections are spread over servers evenly
+     *
+     * @param endpoints                 servers to connect to
+     * @param connections               count of connections
+     * @param balancing                 how the connection for the next command is chosen
+     * @param clientListenerConstructor to provide constructor for client listener
+     * @param configurer                called for every new connection, including replacing ones, before it is used,
+     *                                  sets serializer, dispatcher, batching and so on
+     */
+    public CommandClientPool(List<InetSocketAddress> endpoints,
+                             int connections,
+                             Balancing balancing,
+                             Function<Socket, CommandClientListener> clientListenerConstructor,
+                             Consumer<CommandClient> configurer) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("Endpoints must be specified");
+        }
+        if (connections < 1) {
+            throw new IllegalArgumentException("Wrong count of connections: " + connections);
+        }
+        this.endpoints = new ArrayList<>(endpoints);
+        this.clientListenerConstructor = clientListenerConstructor;
+        this.configurer = configurer;
+        this.balancing = balancing;
+        this.clients = new AtomicReferenceArray<>(connections);
+        for (int slot = 0; slot < connections; slot++) {
+            connect(slot);
+        }
+    }
+
+    /**
+     * Sends command through one of connections
+     *
+     * @param command command to be sent
+     * @param <T>     generic type
+     * @throws IOException if there is no connection or failed to send
+     */
+    public <T extends AbstractCommand> void send(T command) throws IOException {
+        select().send(command);
+    }
+
+    /**
+     * Sends command through one of connections and waits for the response during {@link #setCallTimeout(Duration) call timeout}
+     *
+     * @param command command to be sent
+     * @param <R>     type of the response
+     * @return future completed with the response of server
+     */
+    public <R extends AbstractCommand> CompletableFuture<R> call(AbstractCommand command) {
+        return call(command, callTimeout);
+    }
+
+    /**
+     * Sends command through one of connections and waits for the response
+     *
+     * @param command command to be sent
+     * @param timeout time to wait for the response
+     * @param <R>     type of the response
+     * @return future completed with the response of server, or exceptionally if there is no connection
+     */
+    public <R extends AbstractCommand> CompletableFuture<R> call(AbstractCommand command, Duration timeout) {
+        final CommandClient client;
+        try {
+            client = select();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return client.call(command, timeout);
+    }
+
+    /**
+     * @return count of connections ready to send commands
+     */
+    public int getConnectedCount() {
+        int count = 0;
+        for (int slot = 0; slot < clients.length(); slot++) {
+            final CommandClient client = clients.get(slot);
+            if (client != null && client.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return count of connections the pool keeps
+     */
+    public int getSize() {
+        return clients.length();
+    }
+
+    /**
+     * Sets time to wait before replacing the broken connection
+     *
+     * @param reconnectDelay time to wait, 1 second by default
+     */
+    public void setReconnectDelay(Duration reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Sets default time to wait for the response in {@link #call(AbstractCommand)}
+     *
+     * @param callTimeout time to wait for the response, 30 seconds by default
+     */
+    public void setCallTimeout(Duration callTimeout) {
+        this.callTimeout = callTimeout;
+    }
+
+    /**
+     * Stops every connection, broken ones are not replaced since then
+     */
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        for (int slot = 0; slot < clients.length(); slot++) {
+            final CommandClient client = clients.getAndSet(slot, null);
+            if (client != null) {
+                client.stop();
+            }
+        }
+        executor.shutdown();
+    }
+
+    private CommandClient select() throws IOException {
+        final int size = clients.length();
+        final int start = Math.floorMod(next.getAndIncrement(), size);
+        CommandClient selected = null;
+        int selectedPending = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final CommandClient client = clients.get((start + i) % size);
+            if (client == null || !client.isConnected()) {
+                continue;
+            }
+            if (balancing == Balancing.ROUND_ROBIN) {
+                return client;
+            }
+            final int pending = client.client.getPendingCallsCount() + client.client.getOutboundQueueSize();
+            if (pending < selectedPending) {
+                selected = client;
+                selectedPending = pending;
+            }
+        }
+        if (selected == null) {
+            throw new IOException("No connection available");
+        }
+        return selected;
+    }
+
+    private void connect(int slot) {
+        if (stopped.get()) {
+            return;
+        }
+        final InetSocketAddress endpoint = endpoints.get(slot % endpoints.size());
+        final CommandClient client = new CommandClient(endpoint.getHostString(), endpoint.getPort(), clientListenerConstructor);
+        if (!client.isConnected()) {
+            client.stop();
+            reconnectLater(slot);
+            return;
+        }
+        try {
+            configurer.accept(client);
+        } catch (RuntimeException e) {
+            log.error("Failed to configure connection to " + endpoint, e);
+            client.stop();
+            reconnectLater(slot);
+            return;
+        }
+        clients.set(slot, client);
+        client.client.whenStopped(() -> {
+            if (clients.compareAndSet(slot, client, null)) {
+                log.warn("Connection to {} is broken", endpoint);
+                client.stop();
+                reconnectLater(slot);
+            }
+        });
+        if (stopped.get() && clients.compareAndSet(slot, client, null)) {
+            client.stop();
+        }
+    }
+
+    private void reconnectLater(int slot) {
+        if (stopped.get()) {
+            return;
+        }
+        TimerWheel.shared().schedule(() -> reconnect(slot), reconnectDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // the timer thread only hands connecting over to the executor of the pool
+    private void reconnect(int slot) {
+        try {
+            executor.execute(() -> connect(slot));
+        } catch (RejectedExecutionException e) {
+            log.debug("Pool is stopped, reconnecting is cancelled");
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Routes incoming commands to their own executors.
+ * Executors are kept in the table indexed by type id of the command (see {@link Sewy#register(Class)}),
+ * so routing costs one array lookup however many commands are handled.
+ * Commands without executor are passed to the default one.
+ * The dispatcher may be shared by many client listeners.
+ */
+public class CommandDispatcher {
+
+    /**
+     * Where the executor is run
+     */
+    public enum Mode {
+        /**
+         * In the thread reading the connection. Suits short non-blocking executors
+         */
+        INLINE,
+        /**
+         * In worker executor of the dispatcher, so the connection keeps reading meanwhile.
+         * Suits slow or blocking executors
+         */
+        WORKER
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Executor workers;
+
+    private volatile Handler[] handlers = new Handler[0];
+    private volatile Handler defaultHandler = new Handler(command -> {
+        log.warn("No executor for command {}", command.getClass());
+        return null;
+    }, Mode.INLINE);
+
+    /**
+     * Runs {@link Mode#WORKER} executors in executor made by {@link Sewy#setExecutorFactory(java.util.function.Supplier)} factory
+     * once the first of them is called. The executor is not shut down, idle threads of the default one expire by themselves
+     */
+    public CommandDispatcher() {
+    }
+
+    /**
+     * @param workers executor to run {@link Mode#WORKER} executors in
+     */
+    public CommandDispatcher(Executor workers) {
+        this.workers = Objects.requireNonNull(workers, "workers");
+    }
+
+    /**
+     * Routes the command to the executor run inline
+     *
+     * @param type     command class, must be registered (see {@link Sewy#register(Class)})
+     * @param executor command executor
+     * @param <T>      command type
+     * @return this dispatcher
+     */
+    public <T extends AbstractCommand> CommandDispatcher on(Class<T> type, AbstractCommandExecutor<? super T> executor) {
+        return on(type, executor, Mode.INLINE);
+    }
+
+    /**
+     * Routes the command to the executor
+     *
+     * @param type     command class, must be registered (see {@link Sewy#register(Class)})
+     * @param executor command executor
+     * @param mode     where the executor is run
+     * @param <T>      command type
+     * @return this dispatcher
+     */
+    public <T extends AbstractCommand> CommandDispatcher on(Class<T> type, AbstractCommandExecutor<? super T> executor, Mode mode) {
+        final int typeId = Sewy.getTypeId(type);
+        if (typeId < 0) {
+            throw new IllegalArgumentException("Command is not registered: " + type.getName());
+        }
+        try {
+            lock.lock();
+            final Handler[] handlers = Arrays.copyOf(this.handlers, Math.max(this.handlers.length, typeId + 1));
+            handlers[typeId] = new Handler(executor, mode);
+            this.handlers = handlers;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sets executor of commands not routed anywhere. By default such commands are logged and left without response
+     *
+     * @param executor command executor
+     * @param mode     where the executor is run
+     * @return this dispatcher
+     */
+    public CommandDispatcher otherwise(AbstractCommandExecutor<AbstractCommand> executor, Mode mode) {
+        defaultHandler = new Handler(executor, mode);
+        return this;
+    }
+
+    /**
+     * @param command incoming command
+     * @return where the executor of the command is run
+     */
+    public Mode modeOf(AbstractCommand command) {
+        return handlerOf(command).mode;
+    }
+
+    /**
+     * Executes the command in the current thread
+     *
+     * @param command incoming command
+     * @return response of the executor
+     */
+    public AbstractCommand dispatch(AbstractCommand command) {
+        return handlerOf(command).executor.onCommand(command);
+    }
+
+    /**
+     * @return executor to run {@link Mode#WORKER} executors in
+     */
+    Executor workers() {
+        final Executor workers = this.workers;
+        if (workers != null) {
+            return workers;
+        }
+        try {
+            lock.lock();
+            if (this.workers == null) {
+                // blocking executors must not occupy common pool, it is shared by the whole application
+                this.workers = Sewy.createExecutor();
+            }
+            return this.workers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Handler handlerOf(AbstractCommand command) {
+        final int typeId = Sewy.getTypeId(command.getClass());
+        final Handler[] handlers = this.handlers;
+        final Handler handler = typeId >= 0 && typeId < handlers.length ? handlers[typeId] : null;
+        return handler != null ? handler : defaultHandler;
+    }
+
+    private static final class Handler {
+        private final AbstractCommandExecutor<AbstractCommand> executor;
+        private final Mode mode;
+
+        @SuppressWarnings("unchecked")
+        private Handler(AbstractCommandExecutor<? extends AbstractCommand> executor, Mode mode) {
+            this.executor = (AbstractCommandExecutor<AbstractCommand>) executor;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Filter of Java serialization stream letting through registered commands only (see {@link Sewy#register(Class)}).
+ * Every class descriptor is checked before any object of the class is created, so the frame carrying
+ * unexpected class, too deep graph, too long array or too many bytes is rejected right away.
+ * Allowed classes are registered commands, their superclasses, classes of their fields including
+ * type arguments like {@code SimpleData} of {@code List<SimpleData>}, concrete JDK classes of fields,
+ * and common JDK collections and values.
+ * Fields declared as {@code Object} or {@code Serializable} hold only those, other classes are to be allowed explicitly.
+ */
+public class CommandFilter implements ObjectInputFilter {
+
+    static final int DEFAULT_MAX_DEPTH = 32;
+    static final int DEFAULT_MAX_ARRAY_LENGTH = 1024 * 1024;
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final List<String> JDK_CLASSES = Arrays.asList(
+            // collections check their internal arrays of these
+            "java.lang.Object", "java.util.Map$Entry",
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Character",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double",
+            "java.lang.Number", "java.lang.String", "java.lang.Enum",
+            "java.math.BigInteger", "java.math.BigDecimal",
+            "java.util.ArrayList", "java.util.LinkedList", "java.util.ArrayDeque",
+            "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+            "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+            "java.util.Arrays$ArrayList", "java.util.CollSer", "java.util.Date", "java.util.UUID",
+            "java.util.Collections$EmptyList", "java.util.Collections$EmptyMap", "java.util.Collections$EmptySet",
+            "java.util.Collections$SingletonList", "java.util.Collections$SingletonMap", "java.util.Collections$SingletonSet",
+            "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableSet",
+            "java.util.Collections$UnmodifiableMap",
+            "java.time.Ser"
+    );
+
+    private final int maxDepth;
+    private final int maxArrayLength;
+    private final long maxBytes;
+    private final Set<Class<?>> extraClasses = new CopyOnWriteArraySet<>();
+
+    // allowed names are computed once per registry snapshot
+    private volatile Allowed allowed;
+
+    /**
+     * Limits depth of object graph to 32, arrays to 1M elements and the stream to 64 MiB
+     */
+    public CommandFilter() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_MAX_ARRAY_LENGTH, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxDepth       depth of object graph
+     * @param maxArrayLength count of elements of any array
+     * @param maxBytes       size of serialized data
+     */
+    public CommandFilter(int maxDepth, int maxArrayLength, long maxBytes) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Wrong max depth: " + maxDepth);
+        }
+        if (maxArrayLength < 0) {
+            throw new IllegalArgumentException("Wrong max array length: " + maxArrayLength);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Wrong max bytes: " + maxBytes);
+        }
+        this.maxDepth = maxDepth;
+        this.maxArrayLength = maxArrayLength;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Allows classes not reachable from fields of registered commands
+     *
+     * @param classes classes to be allowed along with classes of their fields
+     * @return this filter
+     */
+    public CommandFilter allow(Class<?>... classes) {
+        extraClasses.addAll(Arrays.asList(classes));
+        allowed = null;
+        return this;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxArrayLength() {
+        return maxArrayLength;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public Status checkInput(FilterInfo info) {
+        if (info.depth() > maxDepth || info.arrayLength() > maxArrayLength || info.streamBytes() > maxBytes) {
+            return Status.REJECTED;
+        }
+        Class<?> type = info.serialClass();
+        if (type == null) {
+            return Status.ALLOWED;
+        }
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return Status.ALLOWED;
+        }
+        return allowed().names.contains(type.getName()) ? Status.ALLOWED : Status.REJECTED;
+    }
+
+    /**
+     * Reads object of Java serialization
+     *
+     * @param data   buffer containing serialized object
+     * @param offset offset of serialized object
+     * @param length length of serialized object
+     * @param filter filter to check the stream with, {@code null} to read anything
+     * @return object read
+     * @throws IOException if the stream is malformed or rejected by the filter
+     */
+    static Object readObject(byte[] data, int offset, int length, ObjectInputFilter filter) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            if (filter != null) {
+                in.setObjectInputFilter(filter);
+            }
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IOException("Deserialization exception occurred!", e);
+        }
+    }
+
+    private Allowed allowed() {
+        final CommandRegistry registry = Sewy.getRegistry();
+        Allowed allowed = this.allowed;
+        if (allowed == null || allowed.registry != registry) {
+            final Set<String> names = new HashSet<>(JDK_CLASSES);
+            final Set<Type> visited = new HashSet<>();
+            for (Class<?> type : registry.types()) {
+                collect(type, names, visited);
+            }
+            for (Class<?> type : extraClasses) {
+                collect(type, names, visited);
+            }
+            allowed = new Allowed(registry, names);
+            this.allowed = allowed;
+        }
+        return allowed;
+    }
+
+    private static void collect(Type type, Set<String> names, Set<Type> visited) {
+        if (type == null || !visited.add(type)) {
+            return;
+        }
+        if (type instanceof ParameterizedType) {
+            collect(((ParameterizedType) type).getRawType(), names, visited);
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                collect(argument, names, visited);
+            }
+        } else if (type instanceof GenericArrayType) {
+            collect(((GenericArrayType) type).getGenericComponentType(), names, visited);
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                collect(bound, names, visited);
+            }
+        } else if (type instanceof TypeVariable) {
+            for (Type bound : ((TypeVariable<?>) type).getBounds()) {
+                collect(bound, names, visited);
+            }
+        } else if (type instanceof Class) {
+            final Class<?> clazz = (Class<?>) type;
+            if (clazz.isArray()) {
+                collect(clazz.getComponentType(), names, visited);
+                return;
+            }
+            if (clazz.isPrimitive() || clazz == Object.class) {
+                return;
+            }
+            if (clazz.getName().startsWith("java.")) {
+                // concrete JDK classes declared by commands are allowed as is, their fields are not walked
+                if (Serializable.class.isAssignableFrom(clazz) && !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+                    names.add(clazz.getName());
+                }
+                return;
+            }
+            names.add(clazz.getName());
+            collect(clazz.getGenericSuperclass(), names, visited);
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    collect(field.getGenericType(), names, visited);
+                }
+            }
+        }
+    }
+
+    private static final class Allowed {
+        private final CommandRegistry registry;
+        private final Set<String> names;
+
+        private Allowed(CommandRegistry registry, Set<String> names) {
+            this.registry = registry;
+            this.names = names;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame of command protocol.
+ * The frame starts with the header:
+ * <ul>
+ *     <li>flags byte, its highest bit is always clear</li>
+ *     <li>correlation id as unsigned varint if {@link #REQUEST} or {@link #RESPONSE} flag is set,
+ *     or stream id if {@link #STREAM} or {@link #CHUNK} flag is set</li>
+ * </ul>
+ * followed by the serialized command. Empty command means {@code null}.
+ * Frame with {@link #BATCH} flag carries no command, but the sequence of inner frames instead,
+ * every one is prefixed with its length as unsigned varint.
+ * Frame with {@link #COMPRESSED} flag carries the length of the rest of the frame once decompressed as unsigned varint,
+ * followed by the rest compressed with raw Deflate.
+ */
+final class CommandFrame {
+
+    /**
+     * Opposite side is waiting for the response with the same correlation id
+     */
+    static final int REQUEST = 0x01;
+    /**
+     * The frame is the response to the request with the same correlation id
+     */
+    static final int RESPONSE = 0x02;
+    /**
+     * The frame carries several frames, see {@link #unpack()}
+     */
+    static final int BATCH = 0x04;
+    /**
+     * The rest of the frame after the header is compressed, see {@link #inflate(FrameCompressor, int)}
+     */
+    static final int COMPRESSED = 0x08;
+    /**
+     * The frame carries names of codecs supported by the side instead of the command:
+     * offered ones along with {@link #REQUEST} flag, chosen one along with {@link #RESPONSE} flag
+     */
+    static final int NEGOTIATION = 0x10;
+    /**
+     * The frame opens the stream carrying the command describing the stream
+     */
+    static final int STREAM = 0x20;
+    /**
+     * The frame carries next chunk of data of the stream, empty chunk ends the stream.
+     * Along with {@link #STREAM} flag the frame aborts the stream
+     */
+    static final int CHUNK = 0x40;
+
+    // flags of frames having the id in the header
+    private static final int IDENTIFIED = REQUEST | RESPONSE | STREAM | CHUNK;
+
+    private final int flags;
+    private final long correlationId;
+    private final byte[] frame;
+    private final int offset;
+    private final int end;
+
+    private CommandFrame(int flags, long correlationId, byte[] frame, int offset, int end) {
+        this.flags = flags;
+        this.correlationId = correlationId;
+        this.frame = frame;
+        this.offset = offset;
+        this.end = end;
+    }
+
+    /**
+     * Builds the frame
+     *
+     * @param flags         frame flags
+     * @param correlationId correlation id or stream id, ignored unless any flag of the id is set
+     * @param payload       serialized command, empty for {@code null}
+     * @return frame bytes
+     */
+    static byte[] encode(int flags, long correlationId, byte[] payload) {
+        final boolean correlated = (flags & IDENTIFIED) != 0;
+        final int headerSize = 1 + (correlated ? varintSize(correlationId) : 0);
+        final byte[] frame = new byte[headerSize + payload.length];
+        frame[0] = (byte) flags;
+        if (correlated) {
+            long value = correlationId;
+            int position = 1;
+            while ((value & ~0x7FL) != 0) {
+                frame[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            frame[position] = (byte) value;
+        }
+        System.arraycopy(payload, 0, frame, headerSize, payload.length);
+        return frame;
+    }
+
+    /**
+     * Writes the header of the frame, serialized command is to be written right after it
+     *
+     * @param out           stream to write to
+     * @param flags         frame flags
+     * @param correlationId correlation id or stream id, ignored unless any flag of the id is set
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeHeader(OutputStream out, int flags, long correlationId) throws IOException {
+        out.write(flags);
+        if ((flags & IDENTIFIED) != 0) {
+            long value = correlationId;
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Parses frame header
+     *
+     * @param frame frame bytes
+     * @return parsed frame
+     * @throws IOException if the header is malformed
+     */
+    static CommandFrame decode(byte[] frame) throws IOException {
+        return decode(frame, 0, frame.length);
+    }
+
+    private static CommandFrame decode(byte[] frame, int offset, int end) throws IOException {
+        if (offset >= end) {
+            throw new IOException("Empty command frame");
+        }
+        final int flags = frame[offset];
+        if (flags < 0) {
+            throw new IOException("Malformed command frame flags: " + flags);
+        }
+        int position = offset + 1;
+        long correlationId = 0;
+        if ((flags & IDENTIFIED) != 0) {
+            for (int shift = 0; ; shift += 7) {
+                if (position >= end || shift > 63) {
+                    throw new IOException("Malformed correlation id");
+                }
+                final byte b = frame[position++];
+                correlationId |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+        }
+        return new CommandFrame(flags, correlationId, frame, position, end);
+    }
+
+    /**
+     * Writes length of inner frame of the batch or of decompressed data as unsigned varint
+     *
+     * @param out    stream to write to
+     * @param length length to be written
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeLength(OutputStream out, int length) throws IOException {
+        int value = length;
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Compresses the frame unless it is smaller than the threshold or does not get smaller
+     *
+     * @param frame      frame between position and limit of heap buffer, released if compressed
+     * @param compressor deflate state of the connection
+     * @param policy     compression threshold and level
+     * @return compressed frame or the same frame
+     * @throws IOException if failed to compress
+     */
+    static PooledBuffer compress(PooledBuffer frame, FrameCompressor compressor, CompressionPolicy policy) throws IOException {
+        final ByteBuffer buffer = frame.buffer();
+        final byte[] bytes = frame.array();
+        final int start = buffer.arrayOffset() + buffer.position();
+        final int end = start + buffer.remaining();
+        final int flags = bytes[start];
+        if (flags < 0 || (flags & (COMPRESSED | NEGOTIATION)) != 0) {
+            return frame;
+        }
+        int headerEnd = start + 1;
+        if ((flags & IDENTIFIED) != 0) {
+            while (bytes[headerEnd++] < 0) {
+            }
+        }
+        final int length = end - headerEnd;
+        if (length < policy.getThreshold() || length == 0) {
+            return frame;
+        }
+        final PooledOutputStream compressed = new PooledOutputStream(Sewy.getBufferPool(), length / 2 + 16);
+        try {
+            compressed.write(flags | COMPRESSED);
+            compressed.write(bytes, start + 1, headerEnd - start - 1);
+            writeLength(compressed, length);
+            compressor.deflate(bytes, headerEnd, length, policy.getLevel(), compressed);
+        } catch (IOException | RuntimeException e) {
+            compressed.discard();
+            throw e;
+        }
+        if (compressed.size() >= end - start) {
+            compressed.discard();
+            return frame;
+        }
+        frame.release();
+        return compressed.toBuffer();
+    }
+
+    /**
+     * Decompresses the rest of the frame after the header
+     *
+     * @param compressor   deflate state of the connection
+     * @param maxFrameSize size of the largest frame accepted once decompressed
+     * @return decompressed frame with the same header
+     * @throws FrameTooLargeException if decompressed frame would exceed {@code maxFrameSize}
+     * @throws IOException            if the frame is malformed
+     */
+    CommandFrame inflate(FrameCompressor compressor, int maxFrameSize) throws IOException {
+        int position = offset;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (position >= end || shift > 28) {
+                throw new IOException("Malformed length of compressed frame");
+            }
+            final byte b = frame[position++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        final byte[] inflated = compressor.inflate(frame, position, end - position, length, maxFrameSize);
+        return new CommandFrame(flags & ~COMPRESSED, correlationId, inflated, 0, inflated.length);
+    }
+
+    /**
+     * @return data after the header, backed by the frame
+     */
+    ByteBuffer data() {
+        return ByteBuffer.wrap(frame, offset, end - offset);
+    }
+
+    /**
+     * @return data after the header as text
+     */
+    String readText() {
+        return new String(frame, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses inner frames of the batch. Inner frames refer to the bytes of the batch, nothing is copied
+     *
+     * @return inner frames in order of writing
+     * @throws IOException if the batch is malformed
+     */
+    List<CommandFrame> unpack() throws IOException {
+        final List<CommandFrame> frames = new ArrayList<>();
+        int position = offset;
+        while (position < end) {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (position >= end || shift > 28) {
+                    throw new IOException("Malformed length of batched frame");
+                }
+                final byte b = frame[position++];
+                length |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (length <= 0 || length > end - position) {
+                throw new IOException("Malformed length of batched frame: " + length);
+            }
+            final CommandFrame inner = decode(frame, position, position + length);
+            if (inner.is(BATCH)) {
+                throw new IOException("Nested batch");
+            }
+            frames.add(inner);
+            position += length;
+        }
+        return frames;
+    }
+
+    boolean is(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    long getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * Deserializes the command right from the frame
+     *
+     * @param serializer serializer to be used
+     * @return command, {@code null} if the frame carries no command
+     * @throws IOException if failed to deserialize the command
+     */
+    AbstractCommand readCommand(CommandSerializer serializer) throws IOException {
+        final int length = end - offset;
+        return length == 0 ? null : serializer.deserialize(frame, offset, length);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of registered commands.
+ * Every command gets the number in order of registration (type id).
+ * Registering new command makes new snapshot, so lookups never lock nor copy.
+ */
+final class CommandRegistry {
+
+    static final CommandRegistry EMPTY = new CommandRegistry(new Class<?>[0], Collections.emptyMap());
+
+    private final Class<?>[] types;
+    private final Map<Class<?>, Integer> typeIds;
+
+    private CommandRegistry(Class<?>[] types, Map<Class<?>, Integer> typeIds) {
+        this.types = types;
+        this.typeIds = typeIds;
+    }
+
+    /**
+     * @param clazz command class
+     * @return snapshot containing the command, this one if the command is registered already
+     */
+    CommandRegistry with(Class<? extends AbstractCommand> clazz) {
+        if (typeIds.containsKey(clazz)) {
+            return this;
+        }
+        final Class<?>[] types = Arrays.copyOf(this.types, this.types.length + 1);
+        types[this.types.length] = clazz;
+        final Map<Class<?>, Integer> typeIds = new IdentityHashMap<>(this.typeIds);
+        typeIds.put(clazz, this.types.length);
+        return new CommandRegistry(types, typeIds);
+    }
+
+    /**
+     * @param clazz command class
+     * @return type id of the command, {@code -1} if the command is not registered
+     */
+    int typeId(Class<?> clazz) {
+        final Integer typeId = typeIds.get(clazz);
+        return typeId != null ? typeId : -1;
+    }
+
+    /**
+     * @param typeId type id
+     * @return command class, {@code null} if there is no such command registered
+     */
+    @SuppressWarnings("unchecked")
+    Class<? extends AbstractCommand> type(int typeId) {
+        return typeId >= 0 && typeId < types.length ? (Class<? extends AbstractCommand>) types[typeId] : null;
+    }
+
+    /**
+     * @return count of registered commands, type ids are less than that
+     */
+    int size() {
+        return types.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Class<AbstractCommand>> types() {
+        return Collections.unmodifiableList(Arrays.asList((Class<AbstractCommand>[]) types.clone()));
+    }
+}
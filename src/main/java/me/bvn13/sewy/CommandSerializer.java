@@ -0,0 +1,61 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Converts commands into bytes and back.
+ * Implement it to plug another format in, then set it with {@link Sewy#setSerializer(CommandSerializer)}
+ * or per server and client. Both sides must use the same serializer.
+ */
+public interface CommandSerializer {
+
+    /**
+     * Serializes command
+     *
+     * @param command command to be serialized, never {@code null}
+     * @return serialized command
+     * @throws IOException if the command cannot be serialized
+     */
+    byte[] serialize(AbstractCommand command) throws IOException;
+
+    /**
+     * Serializes command right into the stream.
+     * Override it to avoid intermediate array. The stream is owned by the caller, closing it does nothing.
+     *
+     * @param command command to be serialized, never {@code null}
+     * @param out     stream to write to
+     * @throws IOException if the command cannot be serialized
+     */
+    default void serialize(AbstractCommand command, OutputStream out) throws IOException {
+        out.write(serialize(command));
+    }
+
+    /**
+     * Deserializes command
+     *
+     * @param data   buffer containing serialized command
+     * @param offset offset of serialized command in the buffer
+     * @param length length of serialized command
+     * @return command
+     * @throws IOException if the data is malformed
+     */
+    AbstractCommand deserialize(byte[] data, int offset, int length) throws IOException;
+}
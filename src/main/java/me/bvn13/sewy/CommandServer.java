@@ -16,15 +16,21 @@
 package me.bvn13.sewy;
 
 import me.bvn13.sewy.command.AbstractCommand;
+import me.bvn13.sewy.command.RejectCommand;
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
-
-import static java.lang.String.format;
 import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructor;
 
 /**
@@ -34,6 +40,18 @@ import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructo
  */
 public class CommandServer extends Server<CommandClientListener> {
 
+    private volatile CommandSerializer serializer;
+    private volatile CommandDispatcher dispatcher;
+    private volatile WorkerPool workers;
+    private volatile BatchingPolicy batching;
+    private volatile CompressionPolicy compression;
+    private volatile Path fileDirectory;
+    private volatile FileTransferPolicy filePolicy;
+    private volatile HeartbeatPolicy heartbeat;
+
+    protected CommandServer() {
+    }
+
     /**
      * @param host host to bind in order to start listen to clients
      * @param port port to start listen to
@@ -56,56 +74,221 @@ public class CommandServer extends Server<CommandClientListener> {
      * @param port                      port to start listen to
      * @param clientListenerConstructor to provide constructor for client listener (see {@link CommandServer#CommandServer(String, int, Class)})
      */
-    @SuppressWarnings("unchecked")
     public CommandServer(String host, int port, Function<Socket, CommandClientListener> clientListenerConstructor) {
-        log.debug("Starting server");
-        executor.execute(() -> {
-            try (final ServerSocket server = new ServerSocket(port, 0, InetAddress.getByName(host))) {
-
-                socket = server;
-
-                while (!server.isClosed()) {
-                    if (!isMaximumClientsAchieved()) {
-                        final Socket client = server.accept();
-                        final CommandClientListener clientListener = clientListenerConstructor.apply(client);
-                        executor.execute(clientListener);
-                        clients.add(clientListener);
-                    }
-                }
+        start(host, port, clientListenerConstructor);
+    }
 
+    /**
+     * Sends serialized {@link RejectCommand} to connection rejected with {@link OverLimitPolicy#REJECT}
+     *
+     * @return payload of the frame
+     */
+    @Override
+    protected byte[] rejectionFrame() {
+        try {
+            return CommandFrame.encode(0, 0, serializer().serialize(new RejectCommand(REJECTION_REASON)));
+        } catch (IOException e) {
+            log.warn("Unable to serialize rejection", e);
+            return super.rejectionFrame();
+        }
+    }
+
+    /**
+     * Passes serializer, dispatcher, worker pool, batching, compression and heartbeat policies and file directory of the server to the client listener
+     *
+     * @param client client listener
+     */
+    @Override
+    protected void addClient(CommandClientListener client) {
+        if (serializer != null) {
+            client.setSerializer(serializer);
+        }
+        if (dispatcher != null) {
+            client.setDispatcher(dispatcher);
+        }
+        if (workers != null) {
+            client.setWorkers(workers);
+        }
+        if (compression != null) {
+            client.setCompression(compression);
+        }
+        if (fileDirectory != null) {
+            client.setFileDirectory(fileDirectory, filePolicy);
+        }
+        if (heartbeat != null) {
+            client.setHeartbeat(heartbeat);
+        }
+        if (batching != null) {
+            try {
+                client.setBatching(batching);
             } catch (IOException e) {
-                log.error(format("Error while conversation with %s:%d", host, port), e);
+                log.warn("Unable to set batching", e);
             }
-        });
+        }
+        super.addClient(client);
+    }
+
+    /**
+     * Makes commands of clients connected since then processed in the worker pool,
+     * see {@link CommandClientListener#setWorkers(WorkerPool)}
+     *
+     * @param workers worker pool, it is not shut down together with the server
+     */
+    public void setWorkers(WorkerPool workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Makes responses and commands sent to clients connected since then packed into batch frames,
+     * see {@link CommandClientListener#setBatching(BatchingPolicy)}.
+     * Commands sent to every client at once are never batched.
+     *
+     * @param batching limits of batches, {@code null} to send every command in its own frame
+     */
+    public void setBatching(BatchingPolicy batching) {
+        this.batching = batching;
+    }
+
+    /**
+     * Allows clients connected since then to negotiate compression of frames,
+     * see {@link CommandClient#setCompression(CompressionPolicy)}
+     *
+     * @param compression compression settings, {@code null} to refuse compression
+     */
+    public void setCompression(CompressionPolicy compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Pings clients connected since then and disconnects idle ones,
+     * see {@link CommandClientListener#setHeartbeat(HeartbeatPolicy)}
+     *
+     * @param heartbeat heartbeat settings, {@code null} to turn heartbeats off
+     */
+    public void setHeartbeat(HeartbeatPolicy heartbeat) {
+        this.heartbeat = heartbeat;
     }
 
     /**
-     * Sends command to every client
+     * Saves files sent by clients connected since then into the directory,
+     * see {@link CommandClientListener#setFileDirectory(Path)}
+     *
+     * @param fileDirectory directory to save files into, {@code null} to refuse files
+     */
+    public void setFileDirectory(Path fileDirectory) {
+        setFileDirectory(fileDirectory, new FileTransferPolicy());
+    }
+
+    /**
+     * Saves files sent by clients connected since then into the directory within limits of the policy,
+     * see {@link CommandClientListener#setFileDirectory(Path, FileTransferPolicy)}
+     *
+     * @param fileDirectory directory to save files into, {@code null} to refuse files
+     * @param filePolicy    limits of files received
+     */
+    public void setFileDirectory(Path fileDirectory, FileTransferPolicy filePolicy) {
+        this.filePolicy = Objects.requireNonNull(filePolicy, "filePolicy");
+        this.fileDirectory = fileDirectory;
+    }
+
+    /**
+     * Sets dispatcher routing commands of clients connected since then to their executors
+     *
+     * @param dispatcher dispatcher, see {@link CommandClientListener#setDispatcher(CommandDispatcher)}
+     */
+    public void setDispatcher(CommandDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Sets serializer used by this server and its clients instead of {@link Sewy#getSerializer()}.
+     * Applies to clients connected since then.
+     *
+     * @param serializer serializer, {@code null} to use the global one
+     */
+    public void setSerializer(CommandSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * @return serializer used to write commands
+     */
+    protected CommandSerializer serializer() {
+        final CommandSerializer serializer = this.serializer;
+        return serializer != null ? serializer : Sewy.getSerializer();
+    }
+
+    /**
+     * @return {@link Sewy#getCommandFraming()}
+     */
+    @Override
+    protected Framing framing() {
+        return Sewy.getCommandFraming();
+    }
+
+    /**
+     * Sends command to every client in parallel
+     *
+     * @param command     command to be sent
+     * @param <T>         generic type
+     * @return future completed once the command is sent to every client, see {@link #send(AbstractCommand, Consumer, Duration)}
+     */
+    public <T extends AbstractCommand> CompletableFuture<Map<CommandClientListener, Boolean>> send(T command) {
+        return send(command, client -> {});
+    }
+
+    /**
+     * Sends command to every client in parallel
      *
      * @param command     command to be sent
      * @param <T>         generic type
+     * @param onException for catching errors while sending
+     * @return future completed once the command is sent to every client, see {@link #send(AbstractCommand, Consumer, Duration)}
      */
-    public <T extends AbstractCommand> void send(T command) {
-        send(command, client -> {});
+    public <T extends AbstractCommand> CompletableFuture<Map<CommandClientListener, Boolean>> send(T command, Consumer<CommandClientListener> onException) {
+        return send(command, onException, null);
     }
 
     /**
-     * Sends command to every client
+     * Sends command to every client in parallel.
+     * The command is serialized once and the same frame is put into outbound queue of every client.
+     * Queues are drained by the server executor, so slow client does not delay the others.
+     * Timeout does not withdraw the frame: it stays in the queue of the slow client and is written once the client
+     * catches up, the write blocked on the socket keeps blocking. Pass {@code CommandClientListener::stop}
+     * as {@code onException} to disconnect clients not managed to receive the command in time.
      *
      * @param command     command to be sent
      * @param <T>         generic type
-     * @param onException for catching errors while sending. Do not throw any Exception inside onException callback -
-     *                    it leads to stopping sending the command to remaining clients
+     * @param onException for catching errors while sending and clients not managed to receive the command in time
+     * @param timeout     time to wait for every client, {@code null} to wait as long as needed
+     * @return future completed once the command is sent to every client (or timed out)
+     * with {@code true} for every client the command is sent to and {@code false} for failed ones
      */
-    public <T extends AbstractCommand> void send(T command, Consumer<CommandClientListener> onException) {
+    public <T extends AbstractCommand> CompletableFuture<Map<CommandClientListener, Boolean>> send(T command, Consumer<CommandClientListener> onException, Duration timeout) {
         log.debug("Start to send command: " + command);
-        for (CommandClientListener client : clients) {
-            try {
-                client.send(command);
-            } catch (IOException e) {
-                log.error("Failed to send command " + command, e);
-                onException.accept(client);
+        final byte[] frame;
+        try {
+            frame = CommandFrame.encode(0, 0, serializer().serialize(command));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final Map<CommandClientListener, Boolean> results = new ConcurrentHashMap<>();
+        final List<CompletableFuture<Void>> sendings = new ArrayList<>();
+        for (CommandClientListener client : clients.values()) {
+            CompletableFuture<Void> sending = client.writeFrameAsync(frame, executor);
+            if (timeout != null) {
+                sending = sending.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
             }
+            sendings.add(sending.handle((nothing, e) -> {
+                if (e != null) {
+                    log.error("Failed to send command " + command, e);
+                    onException.accept(client);
+                }
+                results.put(client, e == null);
+                return null;
+            }));
         }
+        return CompletableFuture.allOf(sendings.toArray(new CompletableFuture<?>[0]))
+                .thenApply(nothing -> results);
     }
 }
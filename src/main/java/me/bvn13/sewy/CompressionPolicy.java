@@ -0,0 +1,71 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.util.zip.Deflater;
+
+/**
+ * Settings of Deflate compression of command frames.
+ * Frames smaller than the threshold are sent as is, so small commands do not pay for compression.
+ */
+public final class CompressionPolicy {
+
+    /**
+     * Name of the codec used in negotiation
+     */
+    static final String DEFLATE = "deflate";
+
+    private final int threshold;
+    private final int level;
+
+    /**
+     * Compresses frames of 512 bytes and larger with default level
+     */
+    public CompressionPolicy() {
+        this(512, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param threshold size of the command starting from which the frame is compressed
+     * @param level     compression level from 1 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public CompressionPolicy(int threshold, int level) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Wrong threshold: " + threshold);
+        }
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Wrong compression level: " + level);
+        }
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionPolicy{" +
+                "threshold=" + threshold +
+                ", level=" + level +
+                '}';
+    }
+}
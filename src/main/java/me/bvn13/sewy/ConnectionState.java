@@ -0,0 +1,38 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+/**
+ * State of {@link Client} connection
+ */
+public enum ConnectionState {
+    /**
+     * Connecting to server
+     */
+    CONNECTING,
+    /**
+     * Connected to server
+     */
+    CONNECTED,
+    /**
+     * The connection is lost or failed, reconnecting is scheduled if {@link ReconnectPolicy} is set
+     */
+    DISCONNECTED,
+    /**
+     * The client is stopped
+     */
+    STOPPED
+}
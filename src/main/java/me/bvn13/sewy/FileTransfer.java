@@ -0,0 +1,280 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import me.bvn13.sewy.command.FileAcceptCommand;
+import me.bvn13.sewy.command.FileDataCommand;
+import me.bvn13.sewy.command.FileOfferCommand;
+import me.bvn13.sewy.command.FileReceivedCommand;
+import me.bvn13.sewy.command.RejectCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * Transfers files over command connection.
+ * Sender offers the file with {@link FileOfferCommand}, receiver answers with the offset to resume from,
+ * then the data is streamed with {@link FileDataCommand} and checked against CRC32 of the whole file.
+ * Data received so far is kept in {@code <name>.part} file until the file is complete,
+ * so names ending with {@code .part} are refused, and so are files being received at the moment.
+ * Files larger than allowed by {@link FileTransferPolicy} are refused, and so are existing files unless overwriting is allowed.
+ */
+final class FileTransfer {
+
+    private static final Logger log = LoggerFactory.getLogger(FileTransfer.class);
+
+    private static final String PART_SUFFIX = ".part";
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    // part files being written by any connection
+    private static final Set<Path> RECEIVING = ConcurrentHashMap.newKeySet();
+
+    private final Path directory;
+    private final FileTransferPolicy policy;
+
+    /**
+     * @param directory directory to save files received into
+     * @param policy    limits of files received
+     */
+    FileTransfer(Path directory, FileTransferPolicy policy) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.policy = policy;
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Sends the file waiting until opposite side confirms it is received
+     *
+     * @param listener connection to send the file with
+     * @param file     file to be sent
+     * @param name     name of the file for opposite side
+     * @param timeout  time to wait for every answer of opposite side
+     * @return confirmation of opposite side
+     * @throws IOException if failed to read or to send the file, or opposite side rejects it
+     */
+    static FileReceivedCommand send(CommandClientListener listener, Path file, String name, Duration timeout) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long checksum = checksum(channel, size);
+            final FileAcceptCommand accept = answer(FileAcceptCommand.class,
+                    listener.call(new FileOfferCommand(name, size, checksum), timeout));
+            final long offset = accept.getOffset();
+            if (offset < 0 || offset > size) {
+                throw new IOException(String.format("Wrong offset %d to resume %s from", offset, name));
+            }
+            log.debug("Sending {} starting from {} of {} bytes", name, offset, size);
+            channel.position(offset);
+            return answer(FileReceivedCommand.class, listener.callStream(
+                    new FileDataCommand(name, offset, size, checksum), Channels.newInputStream(channel), timeout));
+        }
+    }
+
+    /**
+     * Answers the offer with the count of bytes received in previous attempts
+     */
+    AbstractCommand offer(FileOfferCommand offer) {
+        final Path part = part(offer.getName());
+        if (part == null || offer.getSize() < 0) {
+            return new RejectCommand("Wrong file: " + offer.getName());
+        }
+        final RejectCommand refused = refuse(offer.getName(), offer.getSize());
+        if (refused != null) {
+            return refused;
+        }
+        if (RECEIVING.contains(part)) {
+            return new RejectCommand("File is being received: " + offer.getName());
+        }
+        long offset = 0;
+        try {
+            if (Files.exists(part)) {
+                offset = Files.size(part);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to check received part of " + offer.getName(), e);
+        }
+        return new FileAcceptCommand(offer.getName(), offset <= offer.getSize() ? offset : 0);
+    }
+
+    /**
+     * Writes the data into the part file, renames it once the file is complete and its checksum matches.
+     * The part file is kept if the transfer is broken, and deleted if the checksum does not match
+     */
+    AbstractCommand receive(FileDataCommand command, ChunkedInputStream data) {
+        final String name = command.getName();
+        final Path part = part(name);
+        if (part == null) {
+            return new RejectCommand("Wrong file: " + name);
+        }
+        final long size = command.getSize();
+        final RejectCommand refused = refuse(name, size);
+        if (refused != null) {
+            return refused;
+        }
+        if (!RECEIVING.add(part)) {
+            return new RejectCommand("File is being received: " + name);
+        }
+        try {
+            return receive(command, data, part);
+        } finally {
+            RECEIVING.remove(part);
+        }
+    }
+
+    private AbstractCommand receive(FileDataCommand command, ChunkedInputStream data, Path part) {
+        final String name = command.getName();
+        final long size = command.getSize();
+        long position = command.getOffset();
+        final boolean verified;
+        try (FileChannel channel = FileChannel.open(part,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (position > channel.size()) {
+                return new RejectCommand(String.format("Offset %d is beyond received part of %s", position, name));
+            }
+            channel.truncate(position);
+            for (ByteBuffer chunk; (chunk = data.readChunk()) != null; ) {
+                if (position + chunk.remaining() > size) {
+                    return new RejectCommand("File is larger than announced: " + name);
+                }
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
+            }
+            if (position != size) {
+                return new RejectCommand(String.format("File %s is incomplete: %d of %d bytes", name, position, size));
+            }
+            verified = checksum(channel, size) == command.getChecksum();
+        } catch (IOException e) {
+            log.warn("Failed to receive " + name, e);
+            return new RejectCommand(String.format("Failed to receive %s: %s", name, e.getMessage()));
+        }
+        try {
+            if (!verified) {
+                Files.delete(part);
+                return new RejectCommand("Checksum mismatch: " + name);
+            }
+            if (policy.isOverwrite()) {
+                Files.move(part, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.move(part, directory.resolve(name));
+            }
+        } catch (FileAlreadyExistsException e) {
+            return new RejectCommand("File exists: " + name);
+        } catch (IOException e) {
+            log.warn("Failed to save " + name, e);
+            return new RejectCommand(String.format("Failed to save %s: %s", name, e.getMessage()));
+        }
+        log.debug("File {} of {} bytes is received", name, size);
+        return new FileReceivedCommand(name, size, position - command.getOffset());
+    }
+
+    /**
+     * Checks the file against the policy before any data is received
+     *
+     * @return rejection, {@code null} if the file is accepted
+     */
+    private RejectCommand refuse(String name, long size) {
+        if (size > policy.getMaxFileSize()) {
+            return new RejectCommand(String.format("File %s of %d bytes exceeds maximum of %d bytes", name, size, policy.getMaxFileSize()));
+        }
+        if (!policy.isOverwrite() && Files.exists(directory.resolve(name))) {
+            return new RejectCommand("File exists: " + name);
+        }
+        return null;
+    }
+
+    /**
+     * @return part file, {@code null} if the name is not a plain file name or may be taken for part file
+     */
+    private Path part(String name) {
+        if (name == null || name.isEmpty() || name.endsWith(PART_SUFFIX)) {
+            return null;
+        }
+        final Path file = directory.resolve(name).normalize();
+        if (!directory.equals(file.getParent())) {
+            return null;
+        }
+        return directory.resolve(name + PART_SUFFIX);
+    }
+
+    /**
+     * Calculates CRC32 of the first bytes of the file
+     *
+     * @param channel file
+     * @param size    count of bytes to be checked
+     * @return checksum
+     */
+    static long checksum(FileChannel channel, long size) throws IOException {
+        final CRC32 crc = new CRC32();
+        final PooledBuffer pooled = Sewy.getBufferPool().acquireDirect(CHECKSUM_BUFFER_SIZE);
+        try {
+            final ByteBuffer buffer = pooled.buffer();
+            for (long position = 0; position < size; ) {
+                buffer.clear().limit((int) Math.min(CHECKSUM_BUFFER_SIZE, size - position));
+                final int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File is shorter than expected");
+                }
+                position += read;
+                buffer.flip();
+                crc.update(buffer);
+            }
+        } finally {
+            pooled.release();
+        }
+        return crc.getValue();
+    }
+
+    private static <T extends AbstractCommand> T answer(Class<T> type, CompletableFuture<AbstractCommand> call) throws IOException {
+        final AbstractCommand answer;
+        try {
+            answer = call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the answer");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Failed to transfer the file", e.getCause());
+        }
+        if (answer instanceof RejectCommand) {
+            throw new IOException("File is rejected: " + ((RejectCommand) answer).getReason());
+        }
+        if (!type.isInstance(answer)) {
+            throw new IOException("Unexpected answer: " + answer);
+        }
+        return type.cast(answer);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+/**
+ * Limits of files received, see {@link CommandClientListener#setFileDirectory(java.nio.file.Path, FileTransferPolicy)}
+ */
+public final class FileTransferPolicy {
+
+    static final long DEFAULT_MAX_FILE_SIZE = 1024L * 1024 * 1024;
+
+    private final long maxFileSize;
+    private final boolean overwrite;
+
+    /**
+     * Accepts files up to 1 GiB, existing files are not overwritten
+     */
+    public FileTransferPolicy() {
+        this(DEFAULT_MAX_FILE_SIZE, false);
+    }
+
+    /**
+     * @param maxFileSize size of the largest file accepted, larger ones are refused before any data is received
+     * @param overwrite   {@code true} to replace existing files, {@code false} to refuse them
+     */
+    public FileTransferPolicy(long maxFileSize, boolean overwrite) {
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("Wrong max file size: " + maxFileSize);
+        }
+        this.maxFileSize = maxFileSize;
+        this.overwrite = overwrite;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public boolean isOverwrite() {
+        return overwrite;
+    }
+
+    @Override
+    public String toString() {
+        return "FileTransferPolicy{" +
+                "maxFileSize=" + maxFileSize +
+                ", overwrite=" + overwrite +
+                '}';
+    }
+}
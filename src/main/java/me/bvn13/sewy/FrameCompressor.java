@@ -0,0 +1,136 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate state of one connection.
+ * Deflater and inflater are created once and reset for every frame instead of being allocated per frame.
+ * Thread safe, compressing and decompressing do not wait for each other.
+ */
+final class FrameCompressor {
+
+    // Deflate never compresses better than that, so declared size above it means broken or malicious frame
+    private static final int MAX_RATIO = 1032;
+
+    private final byte[] chunk = new byte[8192];
+    private final Object inflating = new Object();
+    private Deflater deflater;
+    private int level;
+    private Inflater inflater;
+    private volatile boolean ended;
+
+    /**
+     * Compresses the data
+     *
+     * @param bytes  buffer containing the data
+     * @param offset offset of the data
+     * @param length length of the data
+     * @param level  compression level
+     * @param out    stream to write compressed data to
+     * @throws IOException if failed to write
+     */
+    synchronized void deflate(byte[] bytes, int offset, int length, int level, OutputStream out) throws IOException {
+        if (ended) {
+            throw new IOException("Connection is closed");
+        }
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            this.level = level;
+        }
+        deflater.reset();
+        if (this.level != level) {
+            deflater.setLevel(level);
+            this.level = level;
+        }
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            final int count = deflater.deflate(chunk);
+            out.write(chunk, 0, count);
+        }
+    }
+
+    /**
+     * Decompresses the data
+     *
+     * @param bytes  buffer containing compressed data
+     * @param offset offset of compressed data
+     * @param length length of compressed data
+     * @param size    size of the data once decompressed
+     * @param maxSize size of the largest data accepted, checked before anything is allocated
+     * @return decompressed data
+     * @throws FrameTooLargeException if declared size exceeds {@code maxSize}
+     * @throws IOException            if the data is malformed or its size differs from declared one
+     */
+    byte[] inflate(byte[] bytes, int offset, int length, int size, int maxSize) throws IOException {
+        if (size > maxSize) {
+            throw new FrameTooLargeException(size, maxSize);
+        }
+        if (size < 0 || size > (long) length * MAX_RATIO) {
+            throw new IOException("Wrong size of compressed frame: " + size);
+        }
+        final byte[] result = new byte[size];
+        synchronized (inflating) {
+            if (ended) {
+                throw new IOException("Connection is closed");
+            }
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+            inflater.reset();
+            inflater.setInput(bytes, offset, length);
+            int position = 0;
+            try {
+                while (position < size) {
+                    final int count = inflater.inflate(result, position, size - position);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    position += count;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Malformed compressed frame", e);
+            }
+            if (position != size) {
+                throw new IOException("Malformed compressed frame");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Frees native memory of deflater and inflater
+     */
+    synchronized void end() {
+        ended = true;
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        synchronized (inflating) {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+}
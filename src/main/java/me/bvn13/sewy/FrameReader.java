@@ -0,0 +1,435 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Buffered frame reader.
+ * Reads data from the stream block-by-block into the reusable buffer,
+ * cuts frames out of it and keeps the leftover bytes for the next frame.
+ * The buffer is taken from {@link BufferPool} when data arrives and returned once every buffered byte is consumed,
+ * so idle connections hold no buffer.
+ * Not thread safe: every client listener owns its own reader.
+ */
+class FrameReader {
+
+    static final int INITIAL_CAPACITY = 8 * 1024;
+    // the most read from channel at once
+    static final int CHANNEL_READ_SIZE = 64 * 1024;
+
+    /**
+     * Copies the frame out of the buffer
+     */
+    static final Decoder<byte[]> COPY = (buffer, offset, length) -> Arrays.copyOfRange(buffer, offset, offset + length);
+
+    /**
+     * Makes the result of the frame right from the buffer of the reader, before the frame is consumed
+     *
+     * @param <T> type of the result
+     */
+    interface Decoder<T> {
+        /**
+         * @param buffer buffer of the reader, must not be kept
+         * @param offset first byte of the frame
+         * @param length size of the frame
+         * @return result made of the frame
+         */
+        T decode(byte[] buffer, int offset, int length);
+    }
+
+    private final InputStream in;
+    private final BufferPool pool;
+
+    // null while nothing is buffered
+    private PooledBuffer pooled;
+    private byte[] buffer;
+    // first byte of the frame being read
+    private int start;
+    // end of buffered data
+    private int end;
+    // position the separator search has reached for the current frame
+    private int scanned;
+    // count of separator bytes matched right before {@code scanned}
+    private int matched;
+
+    private byte[] separator;
+    private int[] failure;
+
+    private int maxFrameSize = Integer.MAX_VALUE;
+
+    /**
+     * Creates reader to be filled from the channel with {@link #fill(ReadableByteChannel)}
+     */
+    FrameReader() {
+        this(null);
+    }
+
+    FrameReader(InputStream in) {
+        this(in, Sewy.getBufferPool());
+    }
+
+    FrameReader(InputStream in, BufferPool pool) {
+        this.in = in;
+        this.pool = pool;
+    }
+
+    /**
+     * @param maxFrameSize size of the largest frame accepted
+     */
+    void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Checks size of the frame before it is read
+     *
+     * @param length size of the frame
+     * @throws FrameTooLargeException if the frame is too large
+     */
+    void checkFrameSize(long length) throws FrameTooLargeException {
+        if (length > maxFrameSize) {
+            throw new FrameTooLargeException(length, maxFrameSize);
+        }
+    }
+
+    /**
+     * Reads data until {@code separator} is encountered. Separator is not included into the result.
+     * If the stream ends before separator the data read so far is returned
+     * without trailing partially matched separator.
+     * Separator starting inside the partially matched one is found too, e.g. "xaab" is cut into "xa" by "ab",
+     * while byte-by-byte reading of versions 1.2.x missed it.
+     *
+     * @param separator bytes to separate data portions
+     * @return frame bytes or {@code null} if the stream is ended and there is no more data
+     * @throws FrameTooLargeException if no separator is encountered within maximum frame size
+     * @throws IOException            if an I/O error occurs
+     */
+    byte[] readFrame(byte[] separator) throws IOException {
+        return readFrame(separator, COPY);
+    }
+
+    /**
+     * Reads data until {@code separator} is encountered like {@link #readFrame(byte[])} does,
+     * the frame is decoded right from the buffer
+     *
+     * @param separator bytes to separate data portions
+     * @param decoder   decoder of the frame
+     * @return decoded frame or {@code null} if the stream is ended and there is no more data
+     * @throws FrameTooLargeException if no separator is encountered within maximum frame size
+     * @throws IOException            if an I/O error occurs
+     */
+    <T> T readFrame(byte[] separator, Decoder<T> decoder) throws IOException {
+        for (; ; ) {
+            final T frame = pollFrame(separator, decoder);
+            if (frame != null) {
+                return frame;
+            }
+            if (!fill()) {
+                return drain(decoder);
+            }
+        }
+    }
+
+    /**
+     * Cuts the frame out of already buffered data
+     *
+     * @param separator bytes to separate data portions
+     * @return frame bytes or {@code null} if buffered data does not contain separator yet
+     * @throws FrameTooLargeException if no separator is encountered within maximum frame size
+     */
+    byte[] pollFrame(byte[] separator) throws FrameTooLargeException {
+        return pollFrame(separator, COPY);
+    }
+
+    private <T> T pollFrame(byte[] separator, Decoder<T> decoder) throws FrameTooLargeException {
+        prepare(separator);
+        final byte[] buffer = this.buffer;
+        final int end = this.end;
+        if (separator.length == 1) {
+            final byte b = separator[0];
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == b) {
+                    return cut(i, i + 1, decoder);
+                }
+            }
+            scanned = end;
+            checkFrameSize(end - start);
+            return null;
+        }
+        final int[] failure = this.failure;
+        int m = matched;
+        for (int i = scanned; i < end; i++) {
+            final byte b = buffer[i];
+            while (m > 0 && b != separator[m]) {
+                m = failure[m - 1];
+            }
+            if (b == separator[m] && ++m == separator.length) {
+                return cut(i + 1 - m, i + 1, decoder);
+            }
+        }
+        scanned = end;
+        matched = m;
+        // partially matched separator may be the end of the frame
+        checkFrameSize(end - start - m);
+        return null;
+    }
+
+    /**
+     * Reads next portion of data from the stream into the buffer
+     *
+     * @return {@code false} if the stream is ended
+     * @throws IOException if an I/O error occurs
+     */
+    boolean fill() throws IOException {
+        ensureWritable();
+        final int count = in.read(buffer, end, buffer.length - end);
+        if (count < 0) {
+            if (start == end) {
+                reset();
+            }
+            return false;
+        }
+        end += count;
+        return true;
+    }
+
+    /**
+     * Reads next portion of data from non-blocking channel into the buffer.
+     * The channel reads into pooled direct buffer, so it needs no temporary direct buffer of its own
+     *
+     * @param channel channel to read from
+     * @return count of bytes read, {@code -1} if the channel is ended
+     * @throws IOException if an I/O error occurs
+     */
+    int fill(ReadableByteChannel channel) throws IOException {
+        ensureWritable();
+        final PooledBuffer direct = pool.acquireDirect(Math.min(buffer.length - end, CHANNEL_READ_SIZE));
+        try {
+            final ByteBuffer target = direct.buffer();
+            target.limit(Math.min(target.capacity(), buffer.length - end));
+            final int count = channel.read(target);
+            if (count > 0) {
+                target.flip();
+                target.get(buffer, end, count);
+                end += count;
+            } else if (start == end) {
+                reset();
+            }
+            return count;
+        } finally {
+            direct.release();
+        }
+    }
+
+    /**
+     * Reads data from the stream until at least {@code count} bytes are buffered
+     *
+     * @param count required count of buffered bytes
+     * @return {@code false} if the stream is ended before
+     * @throws IOException if an I/O error occurs
+     */
+    boolean request(int count) throws IOException {
+        while (buffered() < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads exactly {@code length} bytes. Bytes not buffered yet are read from the stream directly into the result.
+     * The result grows as data arrives, so the length declared by a header alone never allocates
+     * much more memory than the data actually received.
+     *
+     * @param length count of bytes to read
+     * @return bytes read or {@code null} if the stream is ended before
+     * @throws IOException if an I/O error occurs
+     */
+    byte[] readFully(int length) throws IOException {
+        final int fromBuffer = Math.min(length, buffered());
+        byte[] bytes = new byte[Math.min(length, Math.max(fromBuffer, INITIAL_CAPACITY))];
+        if (fromBuffer > 0) {
+            System.arraycopy(buffer, start, bytes, 0, fromBuffer);
+            skip(fromBuffer);
+        }
+        for (int position = fromBuffer; position < length; ) {
+            if (position == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            final int count = in.read(bytes, position, bytes.length - position);
+            if (count < 0) {
+                return null;
+            }
+            position += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return count of buffered bytes not consumed yet
+     */
+    int buffered() {
+        return end - start;
+    }
+
+    /**
+     * @param index index of buffered byte starting from the first not consumed one
+     * @return buffered byte
+     */
+    byte peek(int index) {
+        return buffer[start + index];
+    }
+
+    /**
+     * Consumes buffered bytes
+     *
+     * @param length count of bytes to consume
+     * @return consumed bytes
+     */
+    byte[] take(int length) {
+        return take(length, COPY);
+    }
+
+    /**
+     * Consumes buffered bytes decoding them right from the buffer
+     *
+     * @param length  count of bytes to consume
+     * @param decoder decoder of the bytes
+     * @return decoded bytes
+     */
+    <T> T take(int length, Decoder<T> decoder) {
+        final T result = decoder.decode(buffer, start, length);
+        skip(length);
+        return result;
+    }
+
+    /**
+     * Drops buffered bytes
+     *
+     * @param length count of bytes to drop
+     */
+    void skip(int length) {
+        start += length;
+        scanned = start;
+        matched = 0;
+        if (start == end) {
+            reset();
+        }
+    }
+
+    /**
+     * Consumes all the buffered data when the stream is ended
+     *
+     * @return buffered data without trailing partially matched separator
+     * or {@code null} if nothing is buffered
+     * @throws FrameTooLargeException if the data exceeds maximum frame size
+     */
+    byte[] drain() throws FrameTooLargeException {
+        return drain(COPY);
+    }
+
+    private <T> T drain(Decoder<T> decoder) throws FrameTooLargeException {
+        if (start == end) {
+            return null;
+        }
+        checkFrameSize(scanned - matched - start);
+        // trailing partially matched separator is dropped as it has always been
+        final T frame = decoder.decode(buffer, start, scanned - matched - start);
+        reset();
+        return frame;
+    }
+
+    private <T> T cut(int frameEnd, int next, Decoder<T> decoder) throws FrameTooLargeException {
+        checkFrameSize(frameEnd - start);
+        final T frame = decoder.decode(buffer, start, frameEnd - start);
+        start = scanned = next;
+        matched = 0;
+        if (start == end) {
+            reset();
+        }
+        return frame;
+    }
+
+    /**
+     * Forgets consumed data returning the buffer into the pool
+     */
+    private void reset() {
+        start = end = scanned = matched = 0;
+        if (pooled != null) {
+            pooled.release();
+            pooled = null;
+            buffer = null;
+        }
+    }
+
+    private void ensureWritable() {
+        if (buffer == null) {
+            pooled = pool.acquire(INITIAL_CAPACITY);
+            buffer = pooled.array();
+            return;
+        }
+        if (end < buffer.length) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        } else {
+            final PooledBuffer larger = pool.acquire(buffer.length * 2);
+            System.arraycopy(buffer, 0, larger.array(), 0, end);
+            pooled.release();
+            pooled = larger;
+            buffer = larger.array();
+        }
+    }
+
+    private void prepare(byte[] separator) {
+        if (separator == this.separator) {
+            return;
+        }
+        if (separator.length == 0) {
+            throw new IllegalArgumentException("Separator must not be empty");
+        }
+        if (!Arrays.equals(separator, this.separator)) {
+            scanned = start;
+            matched = 0;
+            failure = separator.length > 1 ? failureFunction(separator) : null;
+        }
+        this.separator = separator;
+    }
+
+    private static int[] failureFunction(byte[] pattern) {
+        final int[] failure = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the frame received exceeds maximum frame size (see {@link Sewy#setMaxFrameSize(int)}).
+ * The connection is closed since the rest of the stream cannot be framed anymore.
+ */
+public class FrameTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long frameSize;
+    private final int maxFrameSize;
+
+    /**
+     * @param frameSize    size of the frame, declared by its header or read so far
+     * @param maxFrameSize maximum frame size
+     */
+    public FrameTooLargeException(long frameSize, int maxFrameSize) {
+        super("Frame of " + frameSize + " bytes exceeds maximum of " + maxFrameSize + " bytes");
+        this.frameSize = frameSize;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public long getFrameSize() {
+        return frameSize;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static me.bvn13.sewy.Sewy.getSeparator;
+
+/**
+ * Strategy of cutting the stream of bytes into frames.
+ * Use {@link Sewy#setFraming(Framing)} to choose the strategy. Both sides must use the same one.
+ */
+public abstract class Framing {
+
+    private static final Framing SEPARATOR = new Separator();
+    private static final Framing LENGTH_PREFIXED = new LengthPrefixed();
+    private static final Framing VARINT_PREFIXED = new VarintPrefixed();
+
+    /**
+     * Frames are ended with {@link Sewy#getSeparator()}.
+     * The payload must not contain the separator.
+     *
+     * @return separator framing
+     */
+    public static Framing separator() {
+        return SEPARATOR;
+    }
+
+    /**
+     * Frames are preceded with 4-byte big-endian payload length.
+     *
+     * @return length-prefixed framing
+     */
+    public static Framing lengthPrefixed() {
+        return LENGTH_PREFIXED;
+    }
+
+    /**
+     * Frames are preceded with payload length encoded as unsigned varint (1 to 5 bytes).
+     *
+     * @return varint-prefixed framing
+     */
+    public static Framing varintPrefixed() {
+        return VARINT_PREFIXED;
+    }
+
+    Framing() {
+    }
+
+    /**
+     * Cuts the frame out of data buffered in reader
+     *
+     * @param reader frame reader
+     * @return frame or {@code null} if there is not enough data buffered yet
+     * @throws FrameTooLargeException if the frame exceeds maximum frame size of the reader
+     * @throws IOException            if malformed data is encountered
+     */
+    abstract byte[] poll(FrameReader reader) throws IOException;
+
+    /**
+     * Reads the frame blocking until it is received completely
+     *
+     * @param reader frame reader
+     * @return frame or {@code null} if the stream is ended
+     * @throws FrameTooLargeException if the frame exceeds maximum frame size of the reader
+     * @throws IOException            if an I/O error occurs
+     */
+    abstract byte[] read(FrameReader reader) throws IOException;
+
+    /**
+     * Reads the frame blocking until it is received completely, the frame is decoded right from the buffer of the reader
+     *
+     * @param reader  frame reader
+     * @param decoder decoder of the frame
+     * @return decoded frame or {@code null} if the stream is ended
+     * @throws FrameTooLargeException if the frame exceeds maximum frame size of the reader
+     * @throws IOException            if an I/O error occurs
+     */
+    abstract <T> T read(FrameReader reader, FrameReader.Decoder<T> decoder) throws IOException;
+
+    /**
+     * Writes the frame into stream. Does not flush.
+     *
+     * @param out     stream to write into
+     * @param payload frame payload
+     * @param offset  payload offset
+     * @param length  payload length
+     * @throws IOException if an I/O error occurs
+     */
+    abstract void write(OutputStream out, byte[] payload, int offset, int length) throws IOException;
+
+    /**
+     * @return size of the envelope to be passed into {@link #frame(ByteBuffer, ByteBuffer)}
+     */
+    abstract int envelopeSize();
+
+    /**
+     * Frames the payload for gathering write, so the payload is not copied.
+     * Bytes going around the payload (header or separator) are put into the envelope.
+     *
+     * @param envelope buffer having at least {@link #envelopeSize()} bytes remaining
+     * @param payload  frame payload between position and limit
+     * @return buffers to be written in order
+     */
+    abstract ByteBuffer[] frame(ByteBuffer envelope, ByteBuffer payload);
+
+    private static final class Separator extends Framing {
+
+        @Override
+        byte[] poll(FrameReader reader) throws IOException {
+            return reader.pollFrame(getSeparator());
+        }
+
+        @Override
+        byte[] read(FrameReader reader) throws IOException {
+            return reader.readFrame(getSeparator());
+        }
+
+        @Override
+        <T> T read(FrameReader reader, FrameReader.Decoder<T> decoder) throws IOException {
+            return reader.readFrame(getSeparator(), decoder);
+        }
+
+        @Override
+        void write(OutputStream out, byte[] payload, int offset, int length) throws IOException {
+            out.write(payload, offset, length);
+            out.write(getSeparator());
+        }
+
+        @Override
+        int envelopeSize() {
+            return getSeparator().length;
+        }
+
+        @Override
+        ByteBuffer[] frame(ByteBuffer envelope, ByteBuffer payload) {
+            envelope.put(getSeparator()).flip();
+            return new ByteBuffer[]{payload, envelope};
+        }
+
+        @Override
+        public String toString() {
+            return "separator";
+        }
+    }
+
+    private static abstract class Prefixed extends Framing {
+
+        /**
+         * Decodes payload length from buffered bytes
+         *
+         * @param reader frame reader
+         * @return header size in the lower 32 bits, payload length in the upper ones,
+         * or {@code -1} if the header is not buffered completely
+         * @throws IOException if malformed header is encountered
+         */
+        abstract long header(FrameReader reader) throws IOException;
+
+        abstract int maxHeaderSize();
+
+        /**
+         * Puts the header of the payload of given length into the buffer
+         */
+        abstract void putHeader(ByteBuffer header, int length);
+
+        @Override
+        int envelopeSize() {
+            return maxHeaderSize();
+        }
+
+        @Override
+        ByteBuffer[] frame(ByteBuffer envelope, ByteBuffer payload) {
+            putHeader(envelope, payload.remaining());
+            envelope.flip();
+            return new ByteBuffer[]{envelope, payload};
+        }
+
+        @Override
+        byte[] poll(FrameReader reader) throws IOException {
+            final long header = header(reader);
+            if (header < 0) {
+                return null;
+            }
+            final int headerSize = (int) header;
+            final int length = (int) (header >>> 32);
+            reader.checkFrameSize(length);
+            if (reader.buffered() < headerSize + length) {
+                return null;
+            }
+            reader.skip(headerSize);
+            return reader.take(length);
+        }
+
+        @Override
+        byte[] read(FrameReader reader) throws IOException {
+            final long header = readHeader(reader);
+            if (header < 0) {
+                return null;
+            }
+            reader.skip((int) header);
+            return reader.readFully((int) (header >>> 32));
+        }
+
+        @Override
+        <T> T read(FrameReader reader, FrameReader.Decoder<T> decoder) throws IOException {
+            final long header = readHeader(reader);
+            if (header < 0) {
+                return null;
+            }
+            final int headerSize = (int) header;
+            final int length = (int) (header >>> 32);
+            if (!reader.request(headerSize + length)) {
+                return null;
+            }
+            reader.skip(headerSize);
+            return reader.take(length, decoder);
+        }
+
+        private long readHeader(FrameReader reader) throws IOException {
+            long header;
+            while ((header = header(reader)) < 0) {
+                if (!reader.fill()) {
+                    return -1;
+                }
+            }
+            // checked before the frame is read, so nothing is allocated for the frame
+            reader.checkFrameSize(header >>> 32);
+            return header;
+        }
+    }
+
+    private static final class LengthPrefixed extends Prefixed {
+
+        @Override
+        long header(FrameReader reader) throws IOException {
+            if (reader.buffered() < 4) {
+                return -1;
+            }
+            final int length = (reader.peek(0) & 0xFF) << 24
+                    | (reader.peek(1) & 0xFF) << 16
+                    | (reader.peek(2) & 0xFF) << 8
+                    | (reader.peek(3) & 0xFF);
+            if (length < 0) {
+                throw new IOException("Malformed frame length: " + length);
+            }
+            return ((long) length << 32) | 4;
+        }
+
+        @Override
+        int maxHeaderSize() {
+            return 4;
+        }
+
+        @Override
+        void write(OutputStream out, byte[] payload, int offset, int length) throws IOException {
+            out.write(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+            out.write(payload, offset, length);
+        }
+
+        @Override
+        void putHeader(ByteBuffer header, int length) {
+            header.putInt(length);
+        }
+
+        @Override
+        public String toString() {
+            return "length-prefixed";
+        }
+    }
+
+    private static final class VarintPrefixed extends Prefixed {
+
+        @Override
+        long header(FrameReader reader) throws IOException {
+            long length = 0;
+            final int available = Math.min(reader.buffered(), maxHeaderSize());
+            for (int i = 0; i < available; i++) {
+                final byte b = reader.peek(i);
+                length |= (long) (b & 0x7F) << (7 * i);
+                if (b >= 0) {
+                    if (length > Integer.MAX_VALUE) {
+                        throw new IOException("Malformed frame length: " + length);
+                    }
+                    return (length << 32) | (i + 1);
+                }
+            }
+            if (available == maxHeaderSize()) {
+                throw new IOException("Malformed frame length: varint is too long");
+            }
+            return -1;
+        }
+
+        @Override
+        int maxHeaderSize() {
+            return 5;
+        }
+
+        @Override
+        void write(OutputStream out, byte[] payload, int offset, int length) throws IOException {
+            final byte[] header = new byte[maxHeaderSize()];
+            int size = 0;
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                header[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            header[size++] = (byte) value;
+            out.write(header, 0, size);
+            out.write(payload, offset, length);
+        }
+
+        @Override
+        void putHeader(ByteBuffer header, int length) {
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                header.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            header.put((byte) value);
+        }
+
+        @Override
+        public String toString() {
+            return "varint-prefixed";
+        }
+    }
+}
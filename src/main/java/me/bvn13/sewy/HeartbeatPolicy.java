@@ -0,0 +1,82 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.time.Duration;
+
+/**
+ * Settings of heartbeats and idle timeouts of the connection.
+ * {@link me.bvn13.sewy.command.PingCommand} is sent once nothing is written for the ping interval,
+ * the connection is closed once nothing is read or written within the idle timeout.
+ * Zero duration turns the respective check off.
+ */
+public final class HeartbeatPolicy {
+
+    private final Duration pingInterval;
+    private final Duration readIdleTimeout;
+    private final Duration writeIdleTimeout;
+
+    /**
+     * Pings every 10 seconds of silence and closes the connection after 30 seconds without incoming data
+     */
+    public HeartbeatPolicy() {
+        this(Duration.ofSeconds(10), Duration.ofSeconds(30), Duration.ZERO);
+    }
+
+    /**
+     * @param pingInterval     time nothing is written for before the ping is sent
+     * @param readIdleTimeout  time nothing is read for before the connection is closed
+     * @param writeIdleTimeout time nothing is written for before the connection is closed
+     */
+    public HeartbeatPolicy(Duration pingInterval, Duration readIdleTimeout, Duration writeIdleTimeout) {
+        check("ping interval", pingInterval);
+        check("read idle timeout", readIdleTimeout);
+        check("write idle timeout", writeIdleTimeout);
+        if (pingInterval.isZero() && readIdleTimeout.isZero() && writeIdleTimeout.isZero()) {
+            throw new IllegalArgumentException("Every heartbeat check is off");
+        }
+        this.pingInterval = pingInterval;
+        this.readIdleTimeout = readIdleTimeout;
+        this.writeIdleTimeout = writeIdleTimeout;
+    }
+
+    private static void check(String name, Duration duration) {
+        if (duration == null || duration.isNegative()) {
+            throw new IllegalArgumentException("Wrong " + name + ": " + duration);
+        }
+    }
+
+    public Duration getPingInterval() {
+        return pingInterval;
+    }
+
+    public Duration getReadIdleTimeout() {
+        return readIdleTimeout;
+    }
+
+    public Duration getWriteIdleTimeout() {
+        return writeIdleTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return "HeartbeatPolicy{" +
+                "pingInterval=" + pingInterval +
+                ", readIdleTimeout=" + readIdleTimeout +
+                ", writeIdleTimeout=" + writeIdleTimeout +
+                '}';
+    }
+}
@@ -0,0 +1,75 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.OutputStream;
+
+/**
+ * Serializer based on standard Java serialization. Used by default.
+ */
+public class JavaCommandSerializer implements CommandSerializer {
+
+    private final ObjectInputFilter filter;
+
+    /**
+     * Accepts registered commands only, see {@link CommandFilter}
+     */
+    public JavaCommandSerializer() {
+        this(new CommandFilter());
+    }
+
+    /**
+     * @param filter filter of incoming stream, {@code null} to accept anything.
+     *               Accepting anything lets malicious peer to make the server building arbitrary objects
+     */
+    public JavaCommandSerializer(ObjectInputFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public byte[] serialize(AbstractCommand command) throws IOException {
+        try {
+            return SerializationUtils.serialize(command);
+        } catch (SerializationException e) {
+            throw new IOException("Serialization exception occurred!", e);
+        }
+    }
+
+    @Override
+    public void serialize(AbstractCommand command, OutputStream out) throws IOException {
+        try {
+            // closes the stream afterwards, that is harmless for streams of frames
+            SerializationUtils.serialize(command, out);
+        } catch (SerializationException e) {
+            throw new IOException("Serialization exception occurred!", e);
+        }
+    }
+
+    @Override
+    public AbstractCommand deserialize(byte[] data, int offset, int length) throws IOException {
+        final Object command = CommandFilter.readObject(data, offset, length, filter);
+        if (!(command instanceof AbstractCommand)) {
+            throw new IOException("Incorrect command received: " + command);
+        }
+        return (AbstractCommand) command;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts text lines into bytes and back.
+ * Coders and char buffer are reused from line to line, pure ASCII lines skip the coders at all.
+ * Malformed input is replaced with the replacement character.
+ * Encoding is thread safe, decoding is not: lines are expected to be read by one thread.
+ */
+public class LineCodec {
+
+    private final Charset charset;
+    private final boolean asciiCompatible;
+    private final CharsetDecoder decoder;
+    private final CharsetEncoder encoder;
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    /**
+     * UTF-8 codec
+     */
+    public LineCodec() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param charset charset of lines
+     */
+    public LineCodec(Charset charset) {
+        this.charset = charset;
+        this.asciiCompatible = charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Decodes the line
+     *
+     * @param bytes  buffer containing the line
+     * @param offset offset of the line
+     * @param length length of the line
+     * @return decoded line
+     */
+    public String decode(byte[] bytes, int offset, int length) {
+        if (asciiCompatible && isAscii(bytes, offset, length)) {
+            // ASCII is the same in every compatible charset, Latin-1 is copied as is into compact string
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return decodeView(ByteBuffer.wrap(bytes, offset, length)).toString();
+    }
+
+    /**
+     * Decodes the line into the char buffer reused by this codec.
+     * Suits callers parsing the line without making the string of it.
+     *
+     * @param bytes bytes of the line between position and limit, they are consumed
+     * @return decoded line, valid until the next decoding
+     */
+    public CharSequence decodeView(ByteBuffer bytes) {
+        final int required = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+        if (chars.capacity() < required) {
+            chars = CharBuffer.allocate(Math.max(required, chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        return chars.flip();
+    }
+
+    /**
+     * Encodes the line into the buffer taken from the pool
+     *
+     * @param line line to be encoded
+     * @param pool pool to take the buffer from
+     * @return buffer containing the line between position 0 and limit, the caller is responsible to release it
+     */
+    public PooledBuffer encode(CharSequence line, BufferPool pool) {
+        final int length = line.length();
+        if (asciiCompatible && isAscii(line)) {
+            final PooledBuffer buffer = pool.acquire(length);
+            final byte[] array = buffer.array();
+            for (int i = 0; i < length; i++) {
+                array[i] = (byte) line.charAt(i);
+            }
+            buffer.buffer().limit(length);
+            return buffer;
+        }
+        synchronized (encoder) {
+            PooledBuffer buffer = pool.acquire((int) Math.ceil(length * (double) encoder.averageBytesPerChar()) + 16);
+            for (; ; ) {
+                final CharBuffer in = CharBuffer.wrap(line);
+                final ByteBuffer out = buffer.buffer();
+                encoder.reset();
+                CoderResult result = encoder.encode(in, out, true);
+                if (!result.isOverflow()) {
+                    result = encoder.flush(out);
+                }
+                if (!result.isOverflow()) {
+                    out.flip();
+                    return buffer;
+                }
+                final int capacity = buffer.capacity() * 2;
+                buffer.release();
+                buffer = pool.acquire(capacity);
+            }
+        }
+    }
+
+    private static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(CharSequence line) {
+        for (int i = 0, length = line.length(); i < length; i++) {
+            if (line.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
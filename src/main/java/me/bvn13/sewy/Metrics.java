@@ -0,0 +1,345 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics of the server or the client.
+ * Counters are striped ({@link LongAdder}), so updating them from many connections does not contend.
+ * Metrics have no dependencies: read them with getters, {@link #snapshot()} (e.g. to bind gauges of
+ * Micrometer or another metrics library) or register them in JMX with {@link #registerMBean(String)}.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder decodeFailures = new LongAdder();
+    private final LongAdder deserializationFailures = new LongAdder();
+    private final LongAdder framesTooLarge = new LongAdder();
+    private final LongAdder idleTimeouts = new LongAdder();
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // indexed by type id of the command (see Sewy#register)
+    private volatile LatencyHistogram[] latencies = new LatencyHistogram[0];
+    private final LongSupplier outboundQueueDepth;
+
+    Metrics() {
+        this(() -> 0);
+    }
+
+    /**
+     * @param outboundQueueDepth supplier of count of frames waiting to be written at the moment
+     */
+    Metrics(LongSupplier outboundQueueDepth) {
+        this.outboundQueueDepth = outboundQueueDepth;
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return totalConnections.sum();
+    }
+
+    /**
+     * @return count of connections accepted by the server, including rejected ones
+     */
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    /**
+     * @return count of connections rejected because of maximum clients count
+     */
+    @Override
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    @Override
+    public long getFramesReceived() {
+        return framesReceived.sum();
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    /**
+     * @return count of bytes of frame payloads received, framing overhead is not included
+     */
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * @return count of bytes of frame payloads sent, framing overhead is not included
+     */
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return count of frames of command protocol with malformed header
+     */
+    @Override
+    public long getDecodeFailures() {
+        return decodeFailures.sum();
+    }
+
+    /**
+     * @return count of commands failed to be deserialized or not registered
+     */
+    @Override
+    public long getDeserializationFailures() {
+        return deserializationFailures.sum();
+    }
+
+    /**
+     * @return count of connections closed because of the frame exceeding maximum frame size
+     */
+    @Override
+    public long getFramesTooLarge() {
+        return framesTooLarge.sum();
+    }
+
+    /**
+     * @return count of connections closed because of no traffic within idle timeout
+     */
+    @Override
+    public long getIdleTimeouts() {
+        return idleTimeouts.sum();
+    }
+
+    /**
+     * @return round-trip time measured with heartbeats, see {@link HeartbeatPolicy}
+     */
+    public LatencyHistogram getRoundTrip() {
+        return roundTrips;
+    }
+
+    @Override
+    public long getRoundTripP99Nanos() {
+        return roundTrips.getPercentileNanos(99);
+    }
+
+    /**
+     * @return count of frames waiting to be written into sockets at the moment
+     */
+    @Override
+    public long getOutboundQueueDepth() {
+        return outboundQueueDepth.getAsLong();
+    }
+
+    /**
+     * @param type command class
+     * @return processing time of the command, {@code null} if no such command is processed yet
+     */
+    public LatencyHistogram getLatency(Class<?> type) {
+        final int typeId = Sewy.getTypeId(type);
+        final LatencyHistogram[] latencies = this.latencies;
+        return typeId >= 0 && typeId < latencies.length ? latencies[typeId] : null;
+    }
+
+    /**
+     * @return processing time by command class
+     */
+    public Map<Class<?>, LatencyHistogram> getLatencies() {
+        final Map<Class<?>, LatencyHistogram> result = new LinkedHashMap<>();
+        final LatencyHistogram[] latencies = this.latencies;
+        for (int typeId = 0; typeId < latencies.length; typeId++) {
+            if (latencies[typeId] != null) {
+                result.put(Sewy.getType(typeId), latencies[typeId]);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return byCommand(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getCommandP50Nanos() {
+        return byCommand(histogram -> histogram.getPercentileNanos(50));
+    }
+
+    @Override
+    public Map<String, Long> getCommandP99Nanos() {
+        return byCommand(histogram -> histogram.getPercentileNanos(99));
+    }
+
+    /**
+     * @return every metric by its dotted name, e.g. {@code connections.active} or {@code commands.PingCommand.p99}
+     */
+    public Map<String, Long> snapshot() {
+        final Map<String, Long> snapshot = new LinkedHashMap<>();
+        snapshot.put("connections.active", getActiveConnections());
+        snapshot.put("connections.total", getTotalConnections());
+        snapshot.put("connections.accepted", getAcceptedConnections());
+        snapshot.put("connections.rejected", getRejectedConnections());
+        snapshot.put("frames.received", getFramesReceived());
+        snapshot.put("frames.sent", getFramesSent());
+        snapshot.put("bytes.received", getBytesReceived());
+        snapshot.put("bytes.sent", getBytesSent());
+        snapshot.put("failures.decode", getDecodeFailures());
+        snapshot.put("failures.deserialization", getDeserializationFailures());
+        snapshot.put("failures.frame-too-large", getFramesTooLarge());
+        snapshot.put("failures.idle-timeout", getIdleTimeouts());
+        snapshot.put("heartbeat.rtt.count", roundTrips.getCount());
+        snapshot.put("heartbeat.rtt.p50", roundTrips.getPercentileNanos(50));
+        snapshot.put("heartbeat.rtt.p99", roundTrips.getPercentileNanos(99));
+        snapshot.put("heartbeat.rtt.max", roundTrips.getMaxNanos());
+        snapshot.put("outbound.depth", getOutboundQueueDepth());
+        for (Map.Entry<Class<?>, LatencyHistogram> latency : getLatencies().entrySet()) {
+            final String prefix = "commands." + latency.getKey().getSimpleName() + ".";
+            snapshot.put(prefix + "count", latency.getValue().getCount());
+            snapshot.put(prefix + "mean", latency.getValue().getMeanNanos());
+            snapshot.put(prefix + "p50", latency.getValue().getPercentileNanos(50));
+            snapshot.put(prefix + "p99", latency.getValue().getPercentileNanos(99));
+            snapshot.put(prefix + "max", latency.getValue().getMaxNanos());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Registers the metrics in platform MBean server as {@code me.bvn13.sewy:type=Metrics,name=<name>}
+     *
+     * @param name name distinguishing the metrics of this server or client
+     * @return name of registered MBean, use it to unregister
+     * @throws JMException if failed to register
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        final ObjectName objectName = new ObjectName("me.bvn13.sewy:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public String toString() {
+        return "Metrics" + snapshot();
+    }
+
+    void connectionAccepted() {
+        acceptedConnections.increment();
+    }
+
+    void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    void connectionOpened() {
+        activeConnections.increment();
+        totalConnections.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    void frameReceived(int bytes) {
+        framesReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    void frameSent(int bytes) {
+        framesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    void decodeFailed() {
+        decodeFailures.increment();
+    }
+
+    void deserializationFailed() {
+        deserializationFailures.increment();
+    }
+
+    void frameTooLarge() {
+        framesTooLarge.increment();
+    }
+
+    void idleTimedOut() {
+        idleTimeouts.increment();
+    }
+
+    void roundTrip(long nanos) {
+        roundTrips.record(nanos);
+    }
+
+    void commandProcessed(Class<?> type, long nanos) {
+        final int typeId = Sewy.getTypeId(type);
+        if (typeId < 0) {
+            return;
+        }
+        final LatencyHistogram[] latencies = this.latencies;
+        LatencyHistogram histogram = typeId < latencies.length ? latencies[typeId] : null;
+        if (histogram == null) {
+            histogram = createLatency(typeId);
+        }
+        histogram.record(nanos);
+    }
+
+    private LatencyHistogram createLatency(int typeId) {
+        try {
+            lock.lock();
+            LatencyHistogram[] latencies = this.latencies;
+            if (typeId < latencies.length && latencies[typeId] != null) {
+                return latencies[typeId];
+            }
+            latencies = Arrays.copyOf(latencies, Math.max(latencies.length, typeId + 1));
+            latencies[typeId] = new LatencyHistogram();
+            this.latencies = latencies;
+            return latencies[typeId];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, Long> byCommand(ToLongFunction<LatencyHistogram> metric) {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, LatencyHistogram> latency : getLatencies().entrySet()) {
+            result.put(latency.getKey().getName(), metric.applyAsLong(latency.getValue()));
+        }
+        return result;
+    }
+}
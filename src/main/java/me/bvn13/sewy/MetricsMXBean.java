@@ -0,0 +1,70 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}, see {@link Metrics#registerMBean(String)}
+ */
+public interface MetricsMXBean {
+
+    long getActiveConnections();
+
+    long getTotalConnections();
+
+    long getAcceptedConnections();
+
+    long getRejectedConnections();
+
+    long getFramesReceived();
+
+    long getFramesSent();
+
+    long getBytesReceived();
+
+    long getBytesSent();
+
+    long getDecodeFailures();
+
+    long getDeserializationFailures();
+
+    long getFramesTooLarge();
+
+    long getIdleTimeouts();
+
+    /**
+     * @return 99th percentile of heartbeat round-trip time in nanoseconds
+     */
+    long getRoundTripP99Nanos();
+
+    long getOutboundQueueDepth();
+
+    /**
+     * @return count of processed commands by command class
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * @return median processing time in nanoseconds by command class
+     */
+    Map<String, Long> getCommandP50Nanos();
+
+    /**
+     * @return 99th percentile of processing time in nanoseconds by command class
+     */
+    Map<String, Long> getCommandP99Nanos();
+}
@@ -0,0 +1,136 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructor;
+
+/**
+ * TCP Server working with command protocol on non-blocking sockets.
+ * Connections are served by the small fixed set of event loops (one per CPU core by default)
+ * instead of the thread per connection. Complete frames are dispatched to
+ * {@link CommandClientListener#onCommand(me.bvn13.sewy.command.AbstractCommand)} in event loop thread,
+ * so the handler must not block.
+ * {@link CommandClientListener#run()} is never called by this server.
+ */
+public class NioCommandServer extends CommandServer {
+
+    private final List<NioEventLoop> loops = new ArrayList<>();
+
+    /**
+     * @param host host to bind in order to start listen to clients
+     * @param port port to start listen to
+     */
+    public NioCommandServer(String host, int port) {
+        this(host, port, CommandClientListener.class);
+    }
+
+    /**
+     * @param host                host to bind in order to start listen to clients
+     * @param port                port to start listen to
+     * @param clientListenerClass client listen class to be used for communication
+     */
+    public NioCommandServer(String host, int port, Class clientListenerClass) {
+        this(host, port, createClientListenerConstructor(clientListenerClass));
+    }
+
+    /**
+     * @param host                      host to bind in order to start listen to clients
+     * @param port                      port to start listen to
+     * @param clientListenerConstructor to provide constructor for client listener (see {@link NioCommandServer#NioCommandServer(String, int, Class)})
+     */
+    public NioCommandServer(String host, int port, Function<Socket, CommandClientListener> clientListenerConstructor) {
+        this(host, port, clientListenerConstructor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param host                      host to bind in order to start listen to clients
+     * @param port                      port to start listen to
+     * @param clientListenerConstructor to provide constructor for client listener (see {@link NioCommandServer#NioCommandServer(String, int, Class)})
+     * @param ioThreads                 count of event loop threads
+     */
+    public NioCommandServer(String host, int port, Function<Socket, CommandClientListener> clientListenerConstructor, int ioThreads) {
+        log.debug("Starting server");
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("Wrong count of I/O threads: " + ioThreads);
+        }
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                final NioEventLoop loop = new NioEventLoop();
+                loops.add(loop);
+                executor.execute(loop);
+            }
+        } catch (IOException e) {
+            loops.forEach(NioEventLoop::stop);
+            throw new RuntimeException(e);
+        }
+        final ServerSocketChannel server;
+        try {
+            // bound before returning, so clients may connect right after the server is created
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            log.error(format("Error while conversation with %s:%d", host, port), e);
+            loops.forEach(NioEventLoop::stop);
+            return;
+        }
+        socket = server.socket();
+        executor.execute(() -> {
+            try (server) {
+
+                int next = 0;
+                while (server.isOpen() && awaitFreeSlot()) {
+                    final SocketChannel channel = server.accept();
+                    if (!admit(channel.socket())) {
+                        continue;
+                    }
+                    final CommandClientListener clientListener = clientListenerConstructor.apply(channel.socket());
+                    channel.configureBlocking(false);
+                    final NioConnection connection = new NioConnection(channel, loops.get(next), clientListener);
+                    next = (next + 1) % loops.size();
+                    clientListener.attach(connection);
+                    addClient(clientListener);
+                    connection.register();
+                }
+
+            } catch (ClosedChannelException e) {
+                log.debug("Server is stopped");
+            } catch (IOException e) {
+                log.error(format("Error while conversation with %s:%d", host, port), e);
+            }
+        });
+    }
+
+    /**
+     * Stops server gracefully
+     * Disconnects from every client and stops event loops
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        loops.forEach(NioEventLoop::stop);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking connection served by {@link NioEventLoop}.
+ * Collects incoming data in its own buffer and passes complete frames to the client listener.
+ * Outbound data is queued and written by the event loop gathering pending buffers into one write.
+ */
+class NioConnection {
+
+    private static final int MAX_GATHERING = 64;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final CommandClientListener listener;
+    private final FrameReader reader = new FrameReader();
+    private final Queue<Pending> outbound = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer[] gathering = new ByteBuffer[MAX_GATHERING];
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private SelectionKey key;
+
+    NioConnection(SocketChannel channel, NioEventLoop loop, CommandClientListener listener) {
+        this.channel = channel;
+        this.loop = loop;
+        this.listener = listener;
+    }
+
+    /**
+     * Registers connection in event loop
+     */
+    void register() {
+        loop.execute(() -> {
+            try {
+                key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+                listener.onConnect();
+                onWritable();
+            } catch (IOException e) {
+                log.error("Unable to register connection", e);
+                close();
+            }
+        });
+    }
+
+    /**
+     * Queues data to be written. May be called from any thread.
+     * The buffers are queued as one unit, so data written by other threads never gets between them.
+     *
+     * @param length  payload length counted as sent once all the data is written
+     * @param buffers data to be written
+     * @return future completed once all the data is written into socket
+     */
+    CompletableFuture<Void> write(int length, ByteBuffer... buffers) {
+        final Pending pending = new Pending(length, buffers);
+        outbound.add(pending);
+        if (closed.get()) {
+            failPending();
+        }
+        loop.execute(this::onWritable);
+        return pending.future;
+    }
+
+    /**
+     * @return count of writes waiting to be done
+     */
+    int pending() {
+        return outbound.size();
+    }
+
+    /**
+     * Reads available data and dispatches every complete frame
+     */
+    void onReadable() {
+        try {
+            final int count = reader.fill(channel);
+            if (count < 0) {
+                close();
+                return;
+            }
+            dispatchFrames();
+        } catch (FrameTooLargeException e) {
+            listener.rejectFrame(e);
+            close();
+        } catch (IOException e) {
+            log.debug("Connection is broken", e);
+            close();
+        }
+    }
+
+    /**
+     * Passes buffered frames to the listener while it accepts them.
+     * Once the listener is saturated the connection stops reading until the listener catches up,
+     * leaving the rest of data in socket buffers, so TCP slows the opposite side down.
+     */
+    private void dispatchFrames() throws IOException {
+        reader.setMaxFrameSize(listener.getMaxFrameSize());
+        byte[] frame;
+        while (!closed.get() && !listener.isSaturated() && (frame = listener.framing().poll(reader)) != null) {
+            listener.frameReceived(frame.length);
+            if (frame.length == 0) {
+                continue;
+            }
+            try {
+                listener.handleFrame(frame);
+            } catch (Exception e) {
+                log.error("Failed to communicate!", e);
+            }
+        }
+        if (!closed.get() && listener.isSaturated()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            listener.whenUnsaturated(() -> loop.execute(this::resumeReading));
+        }
+    }
+
+    private void resumeReading() {
+        if (closed.get() || !key.isValid()) {
+            return;
+        }
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        try {
+            dispatchFrames();
+        } catch (FrameTooLargeException e) {
+            listener.rejectFrame(e);
+            close();
+        } catch (IOException e) {
+            log.debug("Connection is broken", e);
+            close();
+        }
+    }
+
+    /**
+     * Writes pending data as much as the socket accepts
+     */
+    void onWritable() {
+        if (closed.get() || key == null) {
+            return;
+        }
+        try {
+            while (!outbound.isEmpty()) {
+                int count = 0;
+                gather:
+                for (Pending pending : outbound) {
+                    for (ByteBuffer buffer : pending.buffers) {
+                        if (!buffer.hasRemaining()) {
+                            continue;
+                        }
+                        gathering[count++] = buffer;
+                        if (count == MAX_GATHERING) {
+                            break gather;
+                        }
+                    }
+                }
+                channel.write(gathering, 0, count);
+                for (int i = 0; i < count; i++) {
+                    gathering[i] = null;
+                }
+                Pending head;
+                while ((head = outbound.peek()) != null && head.isWritten()) {
+                    outbound.poll();
+                    listener.frameSent(head.length);
+                    head.future.complete(null);
+                }
+                if (head != null) {
+                    // socket does not accept more data, waiting for it to be writable
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            log.debug("Connection is broken", e);
+            close();
+        }
+    }
+
+    /**
+     * Closes connection stopping the client listener
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Unable to close channel");
+        }
+        failPending();
+        listener.stop();
+    }
+
+    private void failPending() {
+        Pending pending;
+        while ((pending = outbound.poll()) != null) {
+            pending.future.completeExceptionally(new IOException("Connection is closed"));
+        }
+    }
+
+    private static final class Pending {
+        private final int length;
+        private final ByteBuffer[] buffers;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(int length, ByteBuffer[] buffers) {
+            this.length = length;
+            this.buffers = buffers;
+        }
+
+        private boolean isWritten() {
+            return buffers.length == 0 || !buffers[buffers.length - 1].hasRemaining();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * I/O event loop.
+ * Serves many non-blocking connections with the single thread:
+ * reads incoming data, dispatches complete frames and writes pending outbound data.
+ */
+class NioEventLoop implements Runnable {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread;
+
+    NioEventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Event loop runner
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                runTasks();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    final NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        connection.close();
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            log.debug("Event loop is stopped");
+        } catch (IOException e) {
+            log.error("Event loop failed", e);
+        }
+    }
+
+    /**
+     * Runs the task in event loop thread
+     *
+     * @param task task to be run
+     */
+    void execute(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * @return {@code true} if it is called from event loop thread
+     */
+    boolean inEventLoop() {
+        return thread == Thread.currentThread();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Stops event loop closing all the connections
+     */
+    void stop() {
+        execute(() -> {
+            for (SelectionKey key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("Unable to close selector");
+            }
+        });
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Event loop task failed", e);
+            }
+        }
+    }
+}
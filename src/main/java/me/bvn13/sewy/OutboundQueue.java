@@ -0,0 +1,290 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Outbound queue of the connection.
+ * Any thread may enqueue frames while only one thread at a time drains the queue into the socket.
+ * Frames pending at the moment are gathered into one buffer and flushed once the queue is empty,
+ * so bursts of small frames cost few system calls.
+ * The thread draining the queue writes frames of other threads too, but no more than {@link #DRAIN_BUDGET} bytes:
+ * under sustained load the rest is handed over to a writer thread, so the caller is not held forever.
+ */
+class OutboundQueue {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int DRAIN_BUDGET = 1024 * 1024;
+
+    private final OutputStream out;
+    private final Executor handOff;
+    private final IntConsumer onWritten;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile IOException failure;
+
+    OutboundQueue(OutputStream out) {
+        this(out, Writers.EXECUTOR);
+    }
+
+    /**
+     * @param out     stream to write into
+     * @param handOff executor to continue draining with once the draining thread runs out of its budget
+     */
+    OutboundQueue(OutputStream out, Executor handOff) {
+        this(out, handOff, length -> {
+        });
+    }
+
+    /**
+     * @param out     stream to write into
+     * @param handOff executor to continue draining with once the draining thread runs out of its budget
+     * @param onWritten called with payload length of every entry once it is flushed into socket
+     */
+    OutboundQueue(OutputStream out, Executor handOff, IntConsumer onWritten) {
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.handOff = handOff;
+        this.onWritten = onWritten;
+    }
+
+    /**
+     * @return writer threads shared by every connection
+     */
+    static Executor writers() {
+        return Writers.EXECUTOR;
+    }
+
+    /**
+     * Enqueues the frame
+     *
+     * @param payload  frame payload
+     * @param framing  framing to write the payload with
+     * @param executor executor to drain the queue with if no other thread is draining it
+     * @return future completed once the frame is flushed into socket
+     */
+    CompletableFuture<Void> enqueue(byte[] payload, Framing framing, Executor executor) {
+        return enqueue(new Entry(payload, 0, payload.length, framing, null, null), executor);
+    }
+
+    /**
+     * Enqueues the frame held by pooled buffer. The buffer is released once written or failed.
+     *
+     * @param payload  frame payload between position and limit of heap buffer
+     * @param framing  framing to write the payload with
+     * @param executor executor to drain the queue with if no other thread is draining it
+     * @return future completed once the frame is flushed into socket
+     */
+    CompletableFuture<Void> enqueue(PooledBuffer payload, Framing framing, Executor executor) {
+        final int offset = payload.buffer().arrayOffset() + payload.buffer().position();
+        return enqueue(new Entry(payload.array(), offset, payload.buffer().remaining(), framing, null, payload), executor);
+    }
+
+    /**
+     * Enqueues raw data
+     *
+     * @param payload  data to be written
+     * @param suffix   data to be written right after payload
+     * @param executor executor to drain the queue with if no other thread is draining it
+     * @return future completed once the data is flushed into socket
+     */
+    CompletableFuture<Void> enqueueRaw(byte[] payload, byte[] suffix, Executor executor) {
+        return enqueue(new Entry(payload, 0, payload.length, null, suffix, null), executor);
+    }
+
+    /**
+     * @return executor draining continues with once the draining thread runs out of its budget
+     */
+    Executor handOff() {
+        return handOff;
+    }
+
+    /**
+     * @return count of entries waiting to be written
+     */
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Fails all the pending entries and rejects new ones
+     */
+    void close() {
+        if (failure == null) {
+            failure = new IOException("Connection is closed");
+        }
+        failPending();
+    }
+
+    private CompletableFuture<Void> enqueue(Entry entry, Executor executor) {
+        if (failure != null) {
+            entry.fail(failure);
+            return entry.future;
+        }
+        queue.add(entry);
+        while (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+                break;
+            } catch (RejectedExecutionException e) {
+                // nobody is going to drain the queue, so pending frames must not wait for it
+                final IOException rejected = new IOException("Writing is rejected by executor", e);
+                Entry pending;
+                while ((pending = queue.poll()) != null) {
+                    pending.fail(rejected);
+                }
+                draining.set(false);
+                if (queue.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        return entry.future;
+    }
+
+    private void drain() {
+        final List<Entry> written = new ArrayList<>();
+        long budget = DRAIN_BUDGET;
+        for (; ; ) {
+            try {
+                Entry entry;
+                while (budget > 0 && (entry = queue.poll()) != null) {
+                    written.add(entry);
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    entry.writeTo(out);
+                    budget -= entry.length + 1;
+                }
+                out.flush();
+                for (Entry done : written) {
+                    onWritten.accept(done.length);
+                    done.complete();
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                for (Entry failed : written) {
+                    failed.fail(e);
+                }
+                failPending();
+            } finally {
+                written.clear();
+            }
+            if (budget <= 0 && !queue.isEmpty()) {
+                // draining flag is kept, the writer thread goes on with the rest
+                if (handOver()) {
+                    return;
+                }
+                budget = DRAIN_BUDGET;
+                continue;
+            }
+            draining.set(false);
+            // somebody may have enqueued after the queue was seen empty but before draining flag was reset
+            if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private boolean handOver() {
+        try {
+            handOff.execute(this::drain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void failPending() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.fail(failure);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] payload;
+        private final int offset;
+        private final int length;
+        private final Framing framing;
+        private final byte[] suffix;
+        // buffer holding the payload, released once the entry is done
+        private final PooledBuffer pooled;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Entry(byte[] payload, int offset, int length, Framing framing, byte[] suffix, PooledBuffer pooled) {
+            this.payload = payload;
+            this.offset = offset;
+            this.length = length;
+            this.framing = framing;
+            this.suffix = suffix;
+            this.pooled = pooled;
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            if (framing != null) {
+                framing.write(out, payload, offset, length);
+            } else {
+                out.write(payload, offset, length);
+                if (suffix != null) {
+                    out.write(suffix);
+                }
+            }
+        }
+
+        private void complete() {
+            release();
+            future.complete(null);
+        }
+
+        private void fail(IOException e) {
+            release();
+            future.completeExceptionally(e);
+        }
+
+        private void release() {
+            if (pooled != null) {
+                pooled.release();
+            }
+        }
+    }
+
+    /**
+     * Writer threads shared by every connection, started only when draining threads run out of their budget
+     */
+    private static final class Writers {
+        private static final Executor EXECUTOR = Executors.newCachedThreadPool(task -> {
+            final Thread thread = new Thread(task, "sewy-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
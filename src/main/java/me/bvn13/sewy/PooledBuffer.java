@@ -0,0 +1,118 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference-counted buffer taken from {@link BufferPool}.
+ * The buffer is returned into the pool once every holder has released it,
+ * so it must not be touched after the last {@link #release()}.
+ */
+public final class PooledBuffer {
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    // index of size class in the pool, -1 if the buffer is not pooled
+    private final int sizeClass;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * @return underlying buffer
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return backing array of heap buffer
+     * @throws UnsupportedOperationException if the buffer is direct
+     */
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    /**
+     * @return capacity of the buffer
+     */
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return {@code true} if the buffer is allocated outside of heap
+     */
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    /**
+     * @return count of holders of the buffer
+     */
+    public int refCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Adds the holder of the buffer
+     *
+     * @return this buffer
+     */
+    public PooledBuffer retain() {
+        for (; ; ) {
+            final int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Buffer is released already");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Removes the holder of the buffer returning it into the pool if it was the last one
+     */
+    public void release() {
+        final int count = refCount.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("Buffer is released already");
+        }
+    }
+
+    int sizeClass() {
+        return sizeClass;
+    }
+
+    /**
+     * Prepares the buffer to be given out by the pool
+     */
+    PooledBuffer reset() {
+        buffer.clear();
+        refCount.set(1);
+        return this;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Output stream collecting data into heap buffer taken from {@link BufferPool}.
+ * The buffer is replaced with the larger one from the pool when needed.
+ * Closing the stream does nothing, the collected data is taken with {@link #toBuffer()} or dropped with {@link #discard()}.
+ * Not thread safe.
+ */
+class PooledOutputStream extends OutputStream {
+
+    static final int INITIAL_CAPACITY = BufferPool.MIN_SIZE;
+
+    private final BufferPool pool;
+    private PooledBuffer buffer;
+    private byte[] array;
+    private int size;
+
+    PooledOutputStream(BufferPool pool) {
+        this(pool, INITIAL_CAPACITY);
+    }
+
+    PooledOutputStream(BufferPool pool, int capacity) {
+        this.pool = pool;
+        this.buffer = pool.acquire(capacity);
+        this.array = buffer.array();
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(size + 1);
+        array[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, offset, array, size, length);
+        size += length;
+    }
+
+    /**
+     * @return count of bytes written
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the collected data into another stream
+     *
+     * @param out stream to copy to
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(array, 0, size);
+    }
+
+    /**
+     * Reads data from another stream right into the buffer
+     *
+     * @param in  stream to read from
+     * @param max maximum count of bytes to read
+     * @return count of bytes read, -1 if the end of the stream is reached
+     */
+    int readFrom(InputStream in, int max) throws IOException {
+        ensureCapacity(size + max);
+        final int count = in.read(array, size, max);
+        if (count > 0) {
+            size += count;
+        }
+        return count;
+    }
+
+    /**
+     * Hands the collected data over. The stream must not be used since then.
+     *
+     * @return buffer containing the data between position 0 and limit,
+     * the caller is responsible to release it
+     */
+    PooledBuffer toBuffer() {
+        final PooledBuffer result = buffer;
+        result.buffer().limit(size).position(0);
+        buffer = null;
+        array = null;
+        return result;
+    }
+
+    /**
+     * Drops the collected data returning the buffer into the pool
+     */
+    void discard() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+            array = null;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= array.length) {
+            return;
+        }
+        final PooledBuffer larger = pool.acquire(Math.max(capacity, array.length * 2));
+        System.arraycopy(array, 0, larger.array(), 0, size);
+        buffer.release();
+        buffer = larger;
+        array = larger.array();
+    }
+}
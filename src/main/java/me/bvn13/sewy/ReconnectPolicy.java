@@ -0,0 +1,93 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Settings of reconnecting {@link Client} once the connection is lost.
+ * Delay before every next attempt is doubled up to the maximum one,
+ * and a random part of up to a half of it is taken off, so clients do not reconnect all at once.
+ */
+public final class ReconnectPolicy {
+
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final int bufferSize;
+
+    /**
+     * 100 ms initial delay, 30 seconds maximum delay, up to 1000 commands buffered
+     */
+    public ReconnectPolicy() {
+        this(Duration.ofMillis(100), Duration.ofSeconds(30), 1000);
+    }
+
+    /**
+     * @param initialDelay delay before the first attempt
+     * @param maxDelay     maximum delay between attempts
+     * @param bufferSize   count of commands buffered while disconnected, see {@link CommandClient#send(me.bvn13.sewy.command.AbstractCommand)}
+     */
+    public ReconnectPolicy(Duration initialDelay, Duration maxDelay, int bufferSize) {
+        if (initialDelay == null || initialDelay.isNegative() || initialDelay.isZero()) {
+            throw new IllegalArgumentException("Wrong initial delay: " + initialDelay);
+        }
+        if (maxDelay == null || maxDelay.compareTo(initialDelay) < 0) {
+            throw new IllegalArgumentException("Wrong max delay: " + maxDelay);
+        }
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("Wrong buffer size: " + bufferSize);
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.bufferSize = bufferSize;
+    }
+
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param attempt number of the attempt starting from 0
+     * @return delay before the attempt in milliseconds
+     */
+    long delayMillis(int attempt) {
+        final long max = maxDelay.toMillis();
+        long delay = initialDelay.toMillis();
+        for (int i = 0; i < attempt && delay < max; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, max);
+        return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "ReconnectPolicy{" +
+                "initialDelay=" + initialDelay +
+                ", maxDelay=" + maxDelay +
+                ", bufferSize=" + bufferSize +
+                '}';
+    }
+}
@@ -19,15 +19,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 import static java.lang.String.format;
@@ -39,14 +40,23 @@ import static me.bvn13.sewy.ClientListenerFactory.createClientListenerConstructo
  */
 public class Server<T extends AbstractClientListener> {
 
+    static final String REJECTION_REASON = "Maximum clients count is achieved";
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    protected final ExecutorService executor = Executors.newCachedThreadPool();
-    protected final List<T> clients = Collections.synchronizedList(new ArrayList<>());
+    protected final ExecutorService executor = Sewy.createExecutor();
+    protected final Map<Long, T> clients = new ConcurrentHashMap<>();
+    protected final Metrics metrics = new Metrics(this::getOutboundQueueDepth);
 
     protected ServerSocket socket;
 
-    private int maxClientsCount;
+    private final ReentrantLock admission = new ReentrantLock();
+    private final Condition slotFreed = admission.newCondition();
+
+    private volatile int maxClientsCount;
+    private volatile OverLimitPolicy overLimitPolicy = OverLimitPolicy.QUEUE;
+    private volatile int maxFrameSize = Sewy.getMaxFrameSize();
+    private volatile boolean stopped;
 
     protected Server() {
     }
@@ -65,22 +75,39 @@ public class Server<T extends AbstractClientListener> {
      * @param port                      port to start listen to
      * @param clientListenerConstructor to provide constructor for client listener (see {@link me.bvn13.sewy.Server#Server(java.lang.String, int, java.lang.Class)})
      */
-    @SuppressWarnings("unchecked")
     public Server(String host, int port, Function<Socket, T> clientListenerConstructor) {
+        start(host, port, clientListenerConstructor);
+    }
+
+    /**
+     * Starts accept loop
+     *
+     * @param host                      host to bind in order to start listen to clients
+     * @param port                      port to start listen to
+     * @param clientListenerConstructor to provide constructor for client listener
+     */
+    protected void start(String host, int port, Function<Socket, T> clientListenerConstructor) {
         log.debug("Starting server");
+        final ServerSocket server;
+        try {
+            // bound before returning, so clients may connect right after the server is created
+            server = new ServerSocket(port, 0, InetAddress.getByName(host));
+        } catch (IOException e) {
+            log.error(format("Error while conversation with %s:%d", host, port), e);
+            return;
+        }
+        socket = server;
         executor.execute(() -> {
-            try (final ServerSocket server = new ServerSocket(port, 0, InetAddress.getByName(host))) {
-
-                socket = server;
+            try (server) {
 
-                while (!server.isClosed()) {
-                    if (!isMaximumClientsAchieved()) {
-                        final Socket client = server.accept();
-                        final T clientListener = clientListenerConstructor.apply(client);
-                        executor.execute(clientListener);
-                        clients.add(clientListener);
+                while (!server.isClosed() && awaitFreeSlot()) {
+                    final Socket client = server.accept();
+                    if (!admit(client)) {
+                        continue;
                     }
-                    Thread.yield();
+                    final T clientListener = clientListenerConstructor.apply(client);
+                    addClient(clientListener);
+                    executor.execute(clientListener::serve);
                 }
 
             } catch (IOException e) {
@@ -95,12 +122,12 @@ public class Server<T extends AbstractClientListener> {
      */
     public void stop() {
         log.debug("Stopping server");
-        final Iterator<T> iterator = clients.iterator();
-        while (iterator.hasNext()) {
-            final AbstractClientListener client = iterator.next();
+        stopped = true;
+        signalSlotFreed();
+        for (T client : clients.values()) {
             client.stop();
-            iterator.remove();
         }
+        clients.clear();
         try {
             if (socket != null) {
                 socket.close();
@@ -132,14 +159,180 @@ public class Server<T extends AbstractClientListener> {
     /**
      * Sets maximum clients to be connected to server
      *
-     * @param count maximum clients count
+     * @param count maximum clients count, {@code 0} means unlimited
      */
     public void setMaxClientsCount(int count) {
         maxClientsCount = count;
+        signalSlotFreed();
+    }
+
+    /**
+     * Sets the way to treat new connections while maximum clients count is achieved
+     *
+     * @param policy over limit policy, {@link OverLimitPolicy#QUEUE} by default
+     */
+    public void setOverLimitPolicy(OverLimitPolicy policy) {
+        overLimitPolicy = policy;
+        signalSlotFreed();
+    }
+
+    /**
+     * Sets size of the largest frame accepted from clients connected since then.
+     * Client sending larger frame is disconnected
+     *
+     * @param maxFrameSize size of the largest frame, {@link Sewy#getMaxFrameSize()} by default
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize < 1) {
+            throw new IllegalArgumentException("Wrong max frame size: " + maxFrameSize);
+        }
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Returns count of connections rejected because of maximum clients count
+     *
+     * @return count of rejected connections
+     */
+    public long getRejectedClientsCount() {
+        return metrics.getRejectedConnections();
+    }
+
+    /**
+     * @return metrics of the server and its clients
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     protected boolean isMaximumClientsAchieved() {
-        return maxClientsCount == 0
-                || clients.size() >= maxClientsCount;
+        return maxClientsCount > 0
+                && clients.size() >= maxClientsCount;
+    }
+
+    /**
+     * Blocks accept loop until client slot is freed if {@link OverLimitPolicy#QUEUE} is used.
+     * New connections are waiting in backlog meanwhile.
+     *
+     * @return {@code false} if server is stopped while waiting
+     */
+    protected boolean awaitFreeSlot() {
+        admission.lock();
+        try {
+            while (!stopped && overLimitPolicy == OverLimitPolicy.QUEUE && isMaximumClientsAchieved()) {
+                slotFreed.await();
+            }
+            return !stopped;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            admission.unlock();
+        }
+    }
+
+    /**
+     * Decides whether accepted connection is to be served according to maximum clients count.
+     * Rejected connection is closed.
+     *
+     * @param client accepted connection
+     * @return {@code true} if connection is admitted
+     */
+    protected boolean admit(Socket client) {
+        metrics.connectionAccepted();
+        if (!isMaximumClientsAchieved()) {
+            return true;
+        }
+        metrics.connectionRejected();
+        log.debug("Maximum clients count is achieved, rejecting {}", client.getRemoteSocketAddress());
+        try (client) {
+            if (overLimitPolicy == OverLimitPolicy.REJECT) {
+                final byte[] frame = rejectionFrame();
+                final OutputStream out = client.getOutputStream();
+                framing().write(out, frame, 0, frame.length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to reject client", e);
+        }
+        return false;
+    }
+
+    /**
+     * Frame sent to connection rejected with {@link OverLimitPolicy#REJECT}
+     *
+     * @return payload of the frame
+     */
+    protected byte[] rejectionFrame() {
+        return REJECTION_REASON.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Registers connected client. It is removed automatically once disconnected.
+     *
+     * @param client client listener
+     */
+    protected void addClient(T client) {
+        client.setMetrics(metrics);
+        client.setMaxFrameSize(maxFrameSize);
+        clients.put(client.getId(), client);
+        metrics.connectionOpened();
+        client.whenStopped(() -> removeClient(client));
+    }
+
+    /**
+     * Framing strategy of client listeners
+     *
+     * @return {@link Sewy#getFraming()} by default
+     */
+    protected Framing framing() {
+        return Sewy.getFraming();
+    }
+
+    /**
+     * Removes disconnected client and lets accept loop to admit new one
+     *
+     * @param client client listener
+     */
+    protected void removeClient(T client) {
+        if (clients.remove(client.getId(), client)) {
+            metrics.connectionClosed();
+            signalSlotFreed();
+        }
+    }
+
+    private long getOutboundQueueDepth() {
+        long depth = 0;
+        for (T client : clients.values()) {
+            depth += client.getOutboundQueueSize();
+        }
+        return depth;
+    }
+
+    private void signalSlotFreed() {
+        admission.lock();
+        try {
+            slotFreed.signalAll();
+        } finally {
+            admission.unlock();
+        }
+    }
+
+    /**
+     * The way to treat new connections while maximum clients count is achieved
+     */
+    public enum OverLimitPolicy {
+        /**
+         * Do not accept new connections until some client disconnects, they are waiting in backlog
+         */
+        QUEUE,
+        /**
+         * Accept new connection, send the frame describing the reason and close it
+         */
+        REJECT,
+        /**
+         * Accept new connection and close it immediately
+         */
+        CLOSE
     }
 }
@@ -17,10 +17,13 @@ package me.bvn13.sewy;
 
 import me.bvn13.sewy.command.AbstractCommand;
 
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * Supporting class providing protocol restrictions
@@ -28,20 +31,35 @@ import java.util.concurrent.locks.ReentrantLock;
 public final class Sewy {
 
     static final byte SEPARATOR = '\n';
+    static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
 
-    private static Sewy INSTANCE;
+    private static final Sewy INSTANCE = new Sewy();
     private static final ReentrantLock LOCK = new ReentrantLock();
 
-    private final List<Class<?>> registeredDataTypes = new CopyOnWriteArrayList<>();
-    private byte[] separator = new byte[] { SEPARATOR };
+    // settings are read on every message, so they are published through volatile fields and never locked on read
+    private volatile CommandRegistry registry = CommandRegistry.EMPTY;
+    private volatile byte[] separator = new byte[] { SEPARATOR };
+    private volatile Framing framing;
+    private volatile CommandSerializer serializer = new JavaCommandSerializer();
+    private volatile Supplier<ExecutorService> executorFactory = Executors::newCachedThreadPool;
+    private volatile BufferPool bufferPool = new BufferPool();
+    private volatile Charset charset = StandardCharsets.UTF_8;
+    private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
 
     /**
-     * Registers command in white list for further communications
+     * Registers command in white list for further communications.
+     * Commands are numbered in order of registration (see {@link BinaryCommandSerializer}),
+     * registering the same command again does nothing
      * @param clazz command class
      * @param <T> generic type
      */
     public static <T extends AbstractCommand> void register(Class<T> clazz) {
-        getInstance().registeredDataTypes.add(clazz);
+        try {
+            LOCK.lock();
+            getInstance().registry = getInstance().registry.with(clazz);
+        } finally {
+            LOCK.unlock();
+        }
     }
 
     /**
@@ -68,28 +86,221 @@ public final class Sewy {
         }
     }
 
-    private Sewy() {
+    /**
+     * @return framing strategy used to cut the stream into frames,
+     * {@link Framing#separator()} unless another one is set
+     */
+    public static Framing getFraming() {
+        final Framing framing = getInstance().framing;
+        return framing != null ? framing : Framing.separator();
     }
 
-    @SuppressWarnings("unchecked")
-    static List<Class<AbstractCommand>> getRegisteredDataTypes() {
-        final List<Class<AbstractCommand>> dataTypes = new ArrayList<>();
-        for (Class<?> registeredDataType : INSTANCE.registeredDataTypes) {
-            dataTypes.add((Class<AbstractCommand>) registeredDataType);
+    /**
+     * @return framing strategy used by command protocol,
+     * {@link Framing#varintPrefixed()} unless another one is set
+     * @throws IllegalStateException if {@link Framing#separator()} is set: binary command frames may contain the separator
+     */
+    static Framing getCommandFraming() {
+        final Framing framing = getInstance().framing;
+        if (framing == Framing.separator()) {
+            throw new IllegalStateException("Command frames are binary and can not be cut by separator, use prefixed framing");
         }
-        return dataTypes;
+        return framing != null ? framing : Framing.varintPrefixed();
     }
 
-    private static Sewy getInstance() {
+    /**
+     * Sets framing strategy used by client listeners to cut the stream into frames.
+     * By default frames of raw data (see {@link AbstractClientListener#readLine()}) are ended with separator
+     * while frames of command protocol (binary by nature) are prefixed with their length.
+     * Command listeners refuse {@link Framing#separator()}, so prefixed framing must be set to share one with them.
+     *
+     * @param framing framing strategy, see {@link Framing}, {@code null} to restore default ones
+     */
+    public static void setFraming(Framing framing) {
         try {
             LOCK.lock();
-            if (INSTANCE == null) {
-                INSTANCE = new Sewy();
-            }
-            return INSTANCE;
+            getInstance().framing = framing;
         } finally {
             LOCK.unlock();
         }
     }
 
+    /**
+     * @return serializer used by command protocol unless another one is set to the server or client,
+     * {@link JavaCommandSerializer} unless another one is set
+     */
+    public static CommandSerializer getSerializer() {
+        return getInstance().serializer;
+    }
+
+    /**
+     * Sets serializer used by command protocol.
+     * Both sides of the connection must use the same serializer.
+     *
+     * @param serializer serializer, see {@link JavaCommandSerializer} and {@link BinaryCommandSerializer}
+     */
+    public static void setSerializer(CommandSerializer serializer) {
+        if (serializer == null) {
+            throw new IllegalArgumentException("Serializer must be specified");
+        }
+        try {
+            LOCK.lock();
+            getInstance().serializer = serializer;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * @return pool of buffers used to read and write frames
+     */
+    public static BufferPool getBufferPool() {
+        return getInstance().bufferPool;
+    }
+
+    /**
+     * Sets pool of buffers used by client listeners created since then to read and write frames
+     *
+     * @param bufferPool buffer pool
+     */
+    public static void setBufferPool(BufferPool bufferPool) {
+        if (bufferPool == null) {
+            throw new IllegalArgumentException("Buffer pool must be specified");
+        }
+        try {
+            LOCK.lock();
+            getInstance().bufferPool = bufferPool;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * @return charset of lines read and written by client listeners, UTF-8 by default
+     */
+    public static Charset getCharset() {
+        return getInstance().charset;
+    }
+
+    /**
+     * Sets charset of lines read and written by client listeners created since then
+     *
+     * @param charset charset of lines
+     */
+    public static void setCharset(Charset charset) {
+        if (charset == null) {
+            throw new IllegalArgumentException("Charset must be specified");
+        }
+        try {
+            LOCK.lock();
+            getInstance().charset = charset;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * @return size of the largest frame accepted by client listeners, 64 MiB by default
+     */
+    public static int getMaxFrameSize() {
+        return getInstance().maxFrameSize;
+    }
+
+    /**
+     * Sets size of the largest frame accepted by client listeners created since then.
+     * Connection sending larger frame is closed, so the peer cannot make the listener buffer without limit.
+     * Larger payloads are to be streamed, see {@link CommandClientListener#sendStream(AbstractCommand, java.io.InputStream)}
+     *
+     * @param maxFrameSize size of the largest frame
+     */
+    public static void setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize < 1) {
+            throw new IllegalArgumentException("Wrong max frame size: " + maxFrameSize);
+        }
+        try {
+            LOCK.lock();
+            getInstance().maxFrameSize = maxFrameSize;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Sets factory of executors used by servers and clients created since then
+     * to run accept loop and client listeners.
+     * Every server and client shuts its executor down while stopping.
+     * Default one is {@link Executors#newCachedThreadPool()}
+     *
+     * @param executorFactory factory of executors
+     */
+    public static void setExecutorFactory(Supplier<ExecutorService> executorFactory) {
+        try {
+            LOCK.lock();
+            getInstance().executorFactory = executorFactory;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Makes servers and clients created since then run accept loop and client listeners on virtual threads.
+     * Blocking client listeners keep working as is while the count of connections is not limited by platform threads.
+     * Does nothing if the runtime is older than JDK 21.
+     *
+     * @return {@code true} if virtual threads are supported and turned on
+     */
+    public static boolean useVirtualThreads() {
+        if (!VirtualThreads.isSupported()) {
+            return false;
+        }
+        setExecutorFactory(VirtualThreads::newExecutor);
+        return true;
+    }
+
+    static ExecutorService createExecutor() {
+        return getInstance().executorFactory.get();
+    }
+
+    private Sewy() {
+    }
+
+    static List<Class<AbstractCommand>> getRegisteredDataTypes() {
+        return getInstance().registry.types();
+    }
+
+    /**
+     * @param clazz command class
+     * @return {@code true} if the command is registered
+     */
+    static boolean isRegistered(Class<?> clazz) {
+        return getInstance().registry.typeId(clazz) >= 0;
+    }
+
+    /**
+     * @param clazz command class
+     * @return number of the command in order of registration, {@code -1} if the command is not registered
+     */
+    static int getTypeId(Class<?> clazz) {
+        return getInstance().registry.typeId(clazz);
+    }
+
+    /**
+     * @param typeId number of the command in order of registration
+     * @return command class, {@code null} if there is no such command registered
+     */
+    static Class<? extends AbstractCommand> getType(int typeId) {
+        return getInstance().registry.type(typeId);
+    }
+
+    /**
+     * @return snapshot of registered commands
+     */
+    static CommandRegistry getRegistry() {
+        return getInstance().registry;
+    }
+
+    private static Sewy getInstance() {
+        return INSTANCE;
+    }
+
 }
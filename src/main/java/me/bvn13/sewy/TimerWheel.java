@@ -0,0 +1,164 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel running timeouts of many connections in one thread.
+ * Time is split into ticks, the timeout is put into the bucket of the tick it is due at,
+ * so scheduling and cancelling take constant time regardless of count of timeouts.
+ * Timeouts are run in the thread of the wheel, so they must be short.
+ */
+final class TimerWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int WHEEL_SIZE = 512;
+
+    private static volatile TimerWheel shared;
+
+    private final long tickNanos;
+    private final List<List<Timeout>> buckets;
+    private final long started = System.nanoTime();
+    // guarded by buckets
+    private long tick;
+
+    /**
+     * @return the wheel shared by every connection, its thread is started on first use
+     */
+    static TimerWheel shared() {
+        TimerWheel wheel = shared;
+        if (wheel == null) {
+            synchronized (TimerWheel.class) {
+                wheel = shared;
+                if (wheel == null) {
+                    wheel = new TimerWheel(TICK_NANOS, WHEEL_SIZE);
+                    wheel.start("sewy-timer");
+                    shared = wheel;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    TimerWheel(long tickNanos, int size) {
+        this.tickNanos = tickNanos;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    private void start(String name) {
+        final Thread worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules the task
+     *
+     * @param task  task to be run in the thread of the wheel
+     * @param delay delay, rounded up to the tick
+     * @param unit  unit of the delay
+     * @return timeout to cancel the task with
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        final long elapsed = System.nanoTime() - started + unit.toNanos(Math.max(delay, 0));
+        final long due = (elapsed + tickNanos - 1) / tickNanos;
+        synchronized (buckets) {
+            final Timeout timeout = new Timeout(task, Math.max(due, tick + 1));
+            buckets.get((int) (timeout.due % buckets.size())).add(timeout);
+            return timeout;
+        }
+    }
+
+    private void run() {
+        for (; ; ) {
+            final long next;
+            synchronized (buckets) {
+                next = tick + 1;
+            }
+            final long wait = started + next * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            for (Timeout timeout : advance(next)) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    log.error("Timer task failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves to the next tick taking timeouts due
+     */
+    List<Timeout> advance(long next) {
+        final List<Timeout> expired = new ArrayList<>();
+        synchronized (buckets) {
+            tick = next;
+            final Iterator<Timeout> timeouts = buckets.get((int) (next % buckets.size())).iterator();
+            while (timeouts.hasNext()) {
+                final Timeout timeout = timeouts.next();
+                if (timeout.cancelled) {
+                    timeouts.remove();
+                } else if (timeout.due <= next) {
+                    timeouts.remove();
+                    expired.add(timeout);
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Scheduled task
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private final long due;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long due) {
+            this.task = task;
+            this.due = due;
+        }
+
+        /**
+         * Prevents the task from running unless it is run already
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fixed pool of threads processing incoming commands of many connections.
+ * Every connection gets its own lane: commands of the lane are processed one by one in order of receiving,
+ * while lanes of different connections are processed in parallel.
+ * The lane holds limited count of commands. Once it is full the connection stops reading from the socket
+ * until the commands are processed, so fast client is slowed down by TCP instead of filling the memory.
+ * The pool is not stopped together with servers and clients using it, see {@link #shutdown()}.
+ */
+public class WorkerPool {
+
+    // commands of one lane processed at once before the thread is given to another lane
+    private static final int FAIRNESS_BATCH = 64;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ExecutorService executor;
+    private final int laneCapacity;
+
+    /**
+     * @param threads      count of threads
+     * @param laneCapacity count of commands waiting to be processed per connection
+     */
+    public WorkerPool(int threads, int laneCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Wrong count of threads: " + threads);
+        }
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("Wrong lane capacity: " + laneCapacity);
+        }
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.laneCapacity = laneCapacity;
+    }
+
+    /**
+     * @return count of commands waiting to be processed per connection
+     */
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    /**
+     * Stops the threads. Commands not processed yet are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    Lane newLane() {
+        return new Lane();
+    }
+
+    /**
+     * Ordered bounded queue of commands of one connection
+     */
+    final class Lane {
+        private final Semaphore permits = new Semaphore(laneCapacity);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicReference<Runnable> onAvailable = new AtomicReference<>();
+
+        private Lane() {
+        }
+
+        /**
+         * Queues the task waiting for free place if the lane is full
+         *
+         * @param task task to be run
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void submit(Runnable task) throws InterruptedException {
+            permits.acquire();
+            tasks.add(task);
+            schedule();
+        }
+
+        /**
+         * @return {@code true} if there is no place for another task
+         */
+        boolean isFull() {
+            return permits.availablePermits() == 0;
+        }
+
+        /**
+         * @return count of tasks queued or running
+         */
+        int size() {
+            return laneCapacity - permits.availablePermits();
+        }
+
+        /**
+         * Calls back once there is place for another task. Callback is called once
+         *
+         * @param callback callback, called in worker thread unless there is place already
+         */
+        void whenAvailable(Runnable callback) {
+            onAvailable.set(callback);
+            if (!isFull()) {
+                notifyAvailable();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    log.warn("Worker pool is shut down, commands are dropped");
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            Runnable task;
+            int count = 0;
+            while (count++ < FAIRNESS_BATCH && (task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.error("Failed to process command", e);
+                } finally {
+                    permits.release();
+                    notifyAvailable();
+                }
+            }
+            scheduled.set(false);
+            // new tasks may be added after the queue was seen empty but before scheduled flag was reset
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void notifyAvailable() {
+            final Runnable callback = onAvailable.getAndSet(null);
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+}
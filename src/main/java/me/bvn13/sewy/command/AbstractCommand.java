@@ -21,5 +21,7 @@ import java.io.Serializable;
  * The very parent class every command should be inherited from
  */
 public class AbstractCommand implements Serializable {
+    // the value computed for 1.2.x, so commands of older versions are still read
+    private static final long serialVersionUID = 5732659995683361788L;
 
 }
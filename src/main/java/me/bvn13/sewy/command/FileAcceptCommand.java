@@ -0,0 +1,52 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy.command;
+
+/**
+ * Answer to {@link FileOfferCommand} telling where to resume the transfer from
+ */
+public class FileAcceptCommand extends AbstractCommand {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long offset;
+
+    // used by BinaryCommandSerializer, fields are set afterwards
+    private FileAcceptCommand() {
+        this(null, 0);
+    }
+
+    public FileAcceptCommand(String name, long offset) {
+        this.name = name;
+        this.offset = offset;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return "FileAcceptCommand{" +
+                "name='" + name + '\'' +
+                ", offset=" + offset +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy.command;
+
+/**
+ * Announces the file to be sent, see {@link me.bvn13.sewy.CommandClientListener#sendFile(java.nio.file.Path, String, java.time.Duration)}.
+ * Answered with {@link FileAcceptCommand} or {@link RejectCommand}
+ */
+public class FileOfferCommand extends AbstractCommand {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long size;
+    private final long checksum;
+
+    // used by BinaryCommandSerializer, fields are set afterwards
+    private FileOfferCommand() {
+        this(null, 0, 0);
+    }
+
+    public FileOfferCommand(String name, long size, long checksum) {
+        this.name = name;
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        return "FileOfferCommand{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", checksum=" + checksum +
+                '}';
+    }
+}
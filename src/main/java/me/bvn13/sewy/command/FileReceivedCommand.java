@@ -0,0 +1,59 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy.command;
+
+/**
+ * Confirms the file is received completely and its checksum matches
+ */
+public class FileReceivedCommand extends AbstractCommand {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long size;
+    private final long received;
+
+    // used by BinaryCommandSerializer, fields are set afterwards
+    private FileReceivedCommand() {
+        this(null, 0, 0);
+    }
+
+    public FileReceivedCommand(String name, long size, long received) {
+        this.name = name;
+        this.size = size;
+        this.received = received;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    @Override
+    public String toString() {
+        return "FileReceivedCommand{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", received=" + received +
+                '}';
+    }
+}
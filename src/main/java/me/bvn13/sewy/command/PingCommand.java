@@ -3,6 +3,9 @@ package me.bvn13.sewy.command;
 import java.time.Instant;
 
 public class PingCommand extends AbstractCommand {
+    // the value computed for 1.2.x, so commands of older versions are still read
+    private static final long serialVersionUID = -8277196578450165656L;
+
     private final long time;
 
     public PingCommand() {
@@ -3,9 +3,17 @@ package me.bvn13.sewy.command;
 import java.time.Instant;
 
 public class PongCommand extends AbstractCommand {
+    // the value computed for 1.2.x, so commands of older versions are still read
+    private static final long serialVersionUID = 1074613835137599327L;
+
     private final long time;
     private long pingTime;
 
+    // used by BinaryCommandSerializer, fields are set afterwards
+    private PongCommand() {
+        this.time = 0;
+    }
+
     public PongCommand(PingCommand ping) {
         this.pingTime = ping.getTime();
         this.time = Instant.now().toEpochMilli();
@@ -0,0 +1,46 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy.command;
+
+/**
+ * Sent by server to the connection it refuses to serve right before closing it.
+ * Register it on client side to receive.
+ */
+public class RejectCommand extends AbstractCommand {
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+
+    // used by BinaryCommandSerializer, fields are set afterwards
+    private RejectCommand() {
+        this(null);
+    }
+
+    public RejectCommand(String reason) {
+        this.reason = reason;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "RejectCommand{" +
+                "reason='" + reason + '\'' +
+                '}';
+    }
+}
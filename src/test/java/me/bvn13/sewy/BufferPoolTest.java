@@ -0,0 +1,126 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class BufferPoolTest {
+
+    @Test
+    void buffersAreReusedBySizeClass() {
+        BufferPool pool = new BufferPool();
+        PooledBuffer buffer = pool.acquire(700);
+        Assertions.assertEquals(1024, buffer.capacity());
+        buffer.release();
+        PooledBuffer reused = pool.acquire(1000);
+        Assertions.assertSame(buffer, reused);
+        Assertions.assertEquals(0, reused.buffer().position());
+        Assertions.assertNotSame(buffer, pool.acquire(1000));
+        Assertions.assertEquals(3, pool.getAcquiredCount());
+        Assertions.assertEquals(1, pool.getReusedCount());
+        Assertions.assertEquals(2, pool.getOutstandingCount());
+    }
+
+    @Test
+    void directBuffersArePooledApartFromHeapOnes() {
+        BufferPool pool = new BufferPool();
+        PooledBuffer direct = pool.acquireDirect(700);
+        Assertions.assertTrue(direct.isDirect());
+        direct.release();
+        PooledBuffer heap = pool.acquire(700);
+        Assertions.assertFalse(heap.isDirect());
+        Assertions.assertNotSame(direct, heap);
+        Assertions.assertSame(direct, pool.acquireDirect(1000));
+        Assertions.assertEquals(0, pool.getIdleBytes());
+        heap.release();
+        Assertions.assertEquals(1024, pool.getIdleBytes());
+    }
+
+    @Test
+    void bufferIsReturnedByLastHolder() {
+        BufferPool pool = new BufferPool();
+        PooledBuffer buffer = pool.acquire(100).retain();
+        buffer.release();
+        Assertions.assertEquals(0, pool.getReleasedCount());
+        buffer.release();
+        Assertions.assertEquals(1, pool.getReleasedCount());
+        Assertions.assertEquals(BufferPool.MIN_SIZE, pool.getIdleBytes());
+        Assertions.assertThrows(IllegalStateException.class, buffer::release);
+        Assertions.assertThrows(IllegalStateException.class, buffer::retain);
+    }
+
+    @Test
+    void hugeBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool(4096, 1024 * 1024);
+        PooledBuffer buffer = pool.acquire(5000);
+        Assertions.assertEquals(5000, buffer.capacity());
+        buffer.release();
+        Assertions.assertEquals(1, pool.getDroppedCount());
+        Assertions.assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    void idleBuffersAreLimited() {
+        BufferPool pool = new BufferPool(4096, 1024);
+        PooledBuffer first = pool.acquire(512);
+        PooledBuffer second = pool.acquire(512);
+        PooledBuffer third = pool.acquire(512);
+        first.release();
+        second.release();
+        third.release();
+        Assertions.assertEquals(1, pool.getDroppedCount());
+        Assertions.assertEquals(1024, pool.getIdleBytes());
+    }
+
+    @Test
+    void outputStreamGrowsWithinPool() {
+        BufferPool pool = new BufferPool();
+        PooledOutputStream out = new PooledOutputStream(pool);
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        out.write(data, 0, data.length);
+        out.write(42);
+        PooledBuffer buffer = out.toBuffer();
+        Assertions.assertEquals(3001, buffer.buffer().remaining());
+        Assertions.assertEquals((byte) 2999, buffer.array()[2999]);
+        Assertions.assertEquals(42, buffer.array()[3000]);
+        buffer.release();
+        Assertions.assertEquals(0, pool.getOutstandingCount());
+    }
+
+    @Test
+    void frameReaderReturnsBufferOnceFramesAreConsumed() throws IOException {
+        BufferPool pool = new BufferPool();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+            Framing.varintPrefixed().write(data, new byte[100], 0, 100);
+        }
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(data.toByteArray()), pool);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(100, Framing.varintPrefixed().read(reader).length);
+        }
+        Assertions.assertEquals(0, pool.getOutstandingCount());
+        Assertions.assertNull(Framing.varintPrefixed().read(reader));
+        Assertions.assertEquals(0, pool.getOutstandingCount());
+    }
+}
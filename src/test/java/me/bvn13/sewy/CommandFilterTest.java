@@ -0,0 +1,84 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import me.bvn13.sewy.command.ComplexCommand;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.util.Vector;
+
+public class CommandFilterTest {
+
+    @Test
+    void registeredCommandAndClassesOfItsFieldsAreAccepted() throws IOException {
+        Sewy.register(ComplexCommand.class);
+        ComplexCommand command = new ComplexCommand();
+        command.add(new ComplexCommand.SimpleData("hello"));
+        byte[] bytes = SerializationUtils.serialize(command);
+        ComplexCommand copy = (ComplexCommand) new JavaCommandSerializer().deserialize(bytes, 0, bytes.length);
+        Assertions.assertEquals("hello", copy.getDatum().get(0).getString());
+    }
+
+    @Test
+    void unregisteredClassesAreRejectedBeforeInstantiation() {
+        UnregisteredCommand.instances = 0;
+        byte[] command = SerializationUtils.serialize(new UnregisteredCommand());
+        IOException e = Assertions.assertThrows(IOException.class, () -> new JavaCommandSerializer().deserialize(command, 0, command.length));
+        Assertions.assertInstanceOf(InvalidClassException.class, e.getCause());
+        Assertions.assertEquals(0, UnregisteredCommand.instances);
+
+        byte[] vector = SerializationUtils.serialize(new Vector<>());
+        Assertions.assertThrows(IOException.class, () -> new JavaCommandSerializer().deserialize(vector, 0, vector.length));
+    }
+
+    @Test
+    void explicitlyAllowedClassIsAccepted() throws IOException {
+        byte[] command = SerializationUtils.serialize(new UnregisteredCommand());
+        JavaCommandSerializer serializer = new JavaCommandSerializer(new CommandFilter().allow(UnregisteredCommand.class));
+        Assertions.assertInstanceOf(UnregisteredCommand.class, serializer.deserialize(command, 0, command.length));
+    }
+
+    @Test
+    void limitsAreEnforced() {
+        Sewy.register(ComplexCommand.class);
+        ComplexCommand command = new ComplexCommand();
+        for (int i = 0; i < 100; i++) {
+            command.add(new ComplexCommand.SimpleData("string " + i));
+        }
+        byte[] bytes = SerializationUtils.serialize(command);
+        Assertions.assertThrows(IOException.class, () -> new JavaCommandSerializer(new CommandFilter(2, 1000, 1 << 20)).deserialize(bytes, 0, bytes.length));
+        Assertions.assertThrows(IOException.class, () -> new JavaCommandSerializer(new CommandFilter(32, 1000, 500)).deserialize(bytes, 0, bytes.length));
+
+        byte[] array = SerializationUtils.serialize(new String[10]);
+        Assertions.assertThrows(IOException.class, () -> CommandFilter.readObject(array, 0, array.length, new CommandFilter(32, 5, 1 << 20)));
+        Assertions.assertDoesNotThrow(() -> CommandFilter.readObject(array, 0, array.length, new CommandFilter(32, 10, 1 << 20)));
+    }
+
+    static class UnregisteredCommand extends AbstractCommand {
+        static int instances;
+        private final long time = System.nanoTime();
+
+        private Object readResolve() {
+            instances++;
+            return this;
+        }
+    }
+}
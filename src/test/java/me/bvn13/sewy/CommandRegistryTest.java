@@ -0,0 +1,48 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.PingCommand;
+import me.bvn13.sewy.command.PongCommand;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommandRegistryTest {
+
+    @Test
+    void commandsAreNumberedInOrderOfRegistration() {
+        CommandRegistry registry = CommandRegistry.EMPTY.with(PingCommand.class).with(PongCommand.class);
+        Assertions.assertEquals(0, registry.typeId(PingCommand.class));
+        Assertions.assertEquals(1, registry.typeId(PongCommand.class));
+        Assertions.assertEquals(PongCommand.class, registry.type(1));
+        Assertions.assertEquals(2, registry.size());
+    }
+
+    @Test
+    void registeringTwiceKeepsTheSnapshot() {
+        CommandRegistry registry = CommandRegistry.EMPTY.with(PingCommand.class);
+        Assertions.assertSame(registry, registry.with(PingCommand.class));
+        Assertions.assertEquals(0, CommandRegistry.EMPTY.size());
+    }
+
+    @Test
+    void unknownCommandsAreNotFound() {
+        CommandRegistry registry = CommandRegistry.EMPTY.with(PingCommand.class);
+        Assertions.assertEquals(-1, registry.typeId(PongCommand.class));
+        Assertions.assertNull(registry.type(1));
+        Assertions.assertNull(registry.type(-1));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import me.bvn13.sewy.command.ComplexCommand;
+import me.bvn13.sewy.command.PingCommand;
+import me.bvn13.sewy.command.PongCommand;
+import me.bvn13.sewy.command.RejectCommand;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class CommandSerializerTest {
+
+    @Test
+    void commandsSurviveRoundTrip() throws IOException {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        Sewy.register(ComplexCommand.class);
+        for (CommandSerializer serializer : new CommandSerializer[]{new JavaCommandSerializer(), new BinaryCommandSerializer()}) {
+            PingCommand ping = new PingCommand();
+            PongCommand pong = (PongCommand) roundTrip(serializer, new PongCommand(ping));
+            Assertions.assertEquals(ping.getTime(), pong.getPingTime());
+
+            ComplexCommand complex = new ComplexCommand();
+            complex.add(new ComplexCommand.SimpleData("hello"));
+            complex.add(new ComplexCommand.SimpleData("\u043c\u0438\u0440"));
+            ComplexCommand copy = (ComplexCommand) roundTrip(serializer, complex);
+            Assertions.assertEquals(2, copy.getDatum().size());
+            Assertions.assertEquals("\u043c\u0438\u0440", copy.getDatum().get(1).getString());
+        }
+    }
+
+    @Test
+    void binaryFormIsSmallerThanJavaSerialization() throws IOException {
+        Sewy.register(PingCommand.class);
+        PingCommand ping = new PingCommand();
+        Assertions.assertTrue(new BinaryCommandSerializer().serialize(ping).length < SerializationUtils.serialize(ping).length);
+    }
+
+    @Test
+    void unregisteredCommandIsRejected() {
+        AbstractCommand unregistered = new AbstractCommand() {
+        };
+        Assertions.assertThrows(IOException.class, () -> new BinaryCommandSerializer().serialize(unregistered));
+    }
+
+    @Test
+    void commandWithoutDefaultConstructorIsRefused() {
+        Sewy.register(WithoutDefaultConstructor.class);
+        Assertions.assertThrows(IOException.class, () -> new BinaryCommandSerializer().serialize(new WithoutDefaultConstructor("value")));
+    }
+
+    @Test
+    void builtInCommandsSurviveBinaryRoundTrip() throws IOException {
+        Sewy.register(RejectCommand.class);
+        RejectCommand reject = (RejectCommand) roundTrip(new BinaryCommandSerializer(), new RejectCommand("reason"));
+        Assertions.assertEquals("reason", reject.getReason());
+    }
+
+    @Test
+    void notSerializableCommandFailsWithIOException() {
+        AbstractCommand command = new WithNotSerializableField();
+        Assertions.assertThrows(IOException.class, () -> new JavaCommandSerializer().serialize(command));
+        Assertions.assertThrows(IOException.class, () -> new JavaCommandSerializer().serialize(command, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void unknownTypeIdIsRejected() {
+        Assertions.assertThrows(IOException.class, () -> new BinaryCommandSerializer().deserialize(new byte[]{(byte) 0xFF, 0x0F}, 0, 2));
+    }
+
+    private static AbstractCommand roundTrip(CommandSerializer serializer, AbstractCommand command) throws IOException {
+        byte[] bytes = serializer.serialize(command);
+        byte[] shifted = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, shifted, 3, bytes.length);
+        return serializer.deserialize(shifted, 3, bytes.length);
+    }
+
+    static class WithNotSerializableField extends AbstractCommand {
+        private final Object value = new Object();
+    }
+
+    static class WithoutDefaultConstructor extends AbstractCommand {
+        private final String value;
+
+        WithoutDefaultConstructor(String value) {
+            this.value = value;
+        }
+    }
+}
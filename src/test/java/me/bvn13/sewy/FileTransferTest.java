@@ -0,0 +1,74 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.AbstractCommand;
+import me.bvn13.sewy.command.FileAcceptCommand;
+import me.bvn13.sewy.command.FileDataCommand;
+import me.bvn13.sewy.command.FileOfferCommand;
+import me.bvn13.sewy.command.FileReceivedCommand;
+import me.bvn13.sewy.command.RejectCommand;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class FileTransferTest {
+
+    @Test
+    void namesOfPartFilesAreRefused() throws Exception {
+        FileTransfer files = new FileTransfer(Files.createTempDirectory("sewy"), new FileTransferPolicy());
+        Assertions.assertInstanceOf(RejectCommand.class, files.offer(new FileOfferCommand("data.part", 1, 0)));
+        ChunkedInputStream data = new ChunkedInputStream(1024);
+        data.end();
+        Assertions.assertInstanceOf(RejectCommand.class, files.receive(new FileDataCommand("data.part", 0, 0, 0), data));
+    }
+
+    @Test
+    void fileBeingReceivedIsRefused() throws Exception {
+        Path directory = Files.createTempDirectory("sewy");
+        FileTransfer files = new FileTransfer(directory, new FileTransferPolicy());
+        byte[] content = "content".getBytes();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        FileDataCommand command = new FileDataCommand("data", 0, content.length, crc.getValue());
+        ChunkedInputStream first = new ChunkedInputStream(1024);
+        CompletableFuture<AbstractCommand> receiving = CompletableFuture.supplyAsync(() -> files.receive(command, first));
+        first.offer(ByteBuffer.wrap(content, 0, 3));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !Files.exists(directory.resolve("data.part"))) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertInstanceOf(RejectCommand.class, files.offer(new FileOfferCommand("data", content.length, crc.getValue())));
+        ChunkedInputStream second = new ChunkedInputStream(1024);
+        second.offer(ByteBuffer.wrap(content));
+        second.end();
+        Assertions.assertInstanceOf(RejectCommand.class, new FileTransfer(directory, new FileTransferPolicy()).receive(command, second));
+
+        first.offer(ByteBuffer.wrap(content, 3, content.length - 3));
+        first.end();
+        Assertions.assertInstanceOf(FileReceivedCommand.class, receiving.get(5, TimeUnit.SECONDS));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(directory.resolve("data")));
+        Assertions.assertInstanceOf(FileAcceptCommand.class, new FileTransfer(directory, new FileTransferPolicy(1024, true))
+                .offer(new FileOfferCommand("data", content.length, crc.getValue())));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class FrameCompressorTest {
+
+    @Test
+    void compressedFrameKeepsHeader() throws IOException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] payload = "abcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabc".repeat(20).getBytes(StandardCharsets.US_ASCII);
+        PooledOutputStream out = new PooledOutputStream(new BufferPool());
+        CommandFrame.writeHeader(out, CommandFrame.REQUEST, 300);
+        out.write(payload);
+        PooledBuffer compressed = CommandFrame.compress(out.toBuffer(), compressor, new CompressionPolicy(16, 9));
+        byte[] bytes = new byte[compressed.buffer().remaining()];
+        compressed.buffer().get(bytes);
+        compressed.release();
+        Assertions.assertTrue(bytes.length < payload.length / 10);
+
+        CommandFrame frame = CommandFrame.decode(bytes);
+        Assertions.assertTrue(frame.is(CommandFrame.COMPRESSED));
+        CommandFrame inflated = frame.inflate(compressor, Integer.MAX_VALUE);
+        Assertions.assertFalse(inflated.is(CommandFrame.COMPRESSED));
+        Assertions.assertTrue(inflated.is(CommandFrame.REQUEST));
+        Assertions.assertEquals(300, inflated.getCorrelationId());
+        Assertions.assertEquals(new String(payload, StandardCharsets.US_ASCII), inflated.readText());
+    }
+
+    @Test
+    void smallFrameIsLeftAsIs() throws IOException {
+        PooledOutputStream out = new PooledOutputStream(new BufferPool());
+        CommandFrame.writeHeader(out, 0, 0);
+        out.write(new byte[] { 1, 2, 3 });
+        PooledBuffer frame = out.toBuffer();
+        Assertions.assertSame(frame, CommandFrame.compress(frame, new FrameCompressor(), new CompressionPolicy()));
+    }
+
+    @Test
+    void declaredSizeIsChecked() throws IOException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] data = new byte[1000];
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressor.deflate(data, 0, data.length, 1, compressed);
+        byte[] bytes = compressed.toByteArray();
+        Assertions.assertArrayEquals(data, compressor.inflate(bytes, 0, bytes.length, data.length, data.length));
+        Assertions.assertThrows(IOException.class, () -> compressor.inflate(bytes, 0, bytes.length, data.length + 1, Integer.MAX_VALUE));
+        Assertions.assertThrows(IOException.class, () -> compressor.inflate(bytes, 0, bytes.length, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        Assertions.assertThrows(FrameTooLargeException.class, () -> compressor.inflate(bytes, 0, bytes.length, data.length, data.length - 1));
+        compressor.end();
+        Assertions.assertThrows(IOException.class, () -> compressor.inflate(bytes, 0, bytes.length, data.length, data.length));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FrameReaderTest {
+
+    @Test
+    void readsFramesSeparatedWithSingleByte() throws IOException {
+        FrameReader reader = new FrameReader(new ByteArrayInputStream("hello\nworld\n".getBytes()));
+        Assertions.assertEquals("hello", new String(reader.readFrame(new byte[]{'\n'})));
+        Assertions.assertEquals("world", new String(reader.readFrame(new byte[]{'\n'})));
+        Assertions.assertNull(reader.readFrame(new byte[]{'\n'}));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 4096})
+    void readsFramesSeparatedWithWideSeparatorSplitBetweenReads(int portion) throws IOException {
+        byte[] separator = "\nend\n".getBytes();
+        FrameReader reader = new FrameReader(new PortionInputStream("a1\nen\nb2\nend\n\nend\nc3\nend\n".getBytes(), portion));
+        Assertions.assertEquals("a1\nen\nb2", new String(reader.readFrame(separator)));
+        Assertions.assertEquals("", new String(reader.readFrame(separator)));
+        Assertions.assertEquals("c3", new String(reader.readFrame(separator)));
+        Assertions.assertNull(reader.readFrame(separator));
+    }
+
+    @Test
+    void findsSeparatorOverlappingPartiallyMatchedOne() throws IOException {
+        // byte-by-byte reading of 1.2.x missed the separator here and returned "xaabyaab"
+        byte[] separator = "ab".getBytes();
+        FrameReader reader = new FrameReader(new PortionInputStream("xaabyaab".getBytes(), 1));
+        Assertions.assertEquals("xa", new String(reader.readFrame(separator)));
+        Assertions.assertEquals("ya", new String(reader.readFrame(separator)));
+    }
+
+    @Test
+    void returnsRemainderWithoutPartialSeparatorWhenStreamEnds() throws IOException {
+        byte[] separator = "\nend\n".getBytes();
+        FrameReader reader = new FrameReader(new ByteArrayInputStream("tail\nen".getBytes()));
+        Assertions.assertEquals("tail", new String(reader.readFrame(separator)));
+        Assertions.assertNull(reader.readFrame(separator));
+    }
+
+    @Test
+    void readsFramesLargerThanBuffer() throws IOException {
+        byte[] data = new byte[FrameReader.INITIAL_CAPACITY * 3 + 1];
+        for (int i = 0; i < data.length - 1; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        data[data.length - 1] = '\n';
+        FrameReader reader = new FrameReader(new PortionInputStream(data, 1000));
+        Assertions.assertEquals(data.length - 1, reader.readFrame(new byte[]{'\n'}).length);
+    }
+
+    /**
+     * Stream returning data by portions of limited size
+     */
+    static class PortionInputStream extends InputStream {
+        private final byte[] data;
+        private final int portion;
+        private int position;
+
+        PortionInputStream(byte[] data, int portion) {
+            this.data = data;
+            this.portion = portion;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, portion), data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+public class FramingTest {
+
+    @Test
+    void prefixedFramesMayContainSeparator() throws IOException {
+        for (Framing framing : new Framing[]{Framing.lengthPrefixed(), Framing.varintPrefixed()}) {
+            byte[][] payloads = {"a\nb".getBytes(), new byte[0], new byte[300], new byte[70000]};
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] payload : payloads) {
+                framing.write(out, payload, 0, payload.length);
+            }
+            FrameReader reader = new FrameReader(new FrameReaderTest.PortionInputStream(out.toByteArray(), 1000));
+            for (byte[] payload : payloads) {
+                Assertions.assertArrayEquals(payload, framing.read(reader), framing.toString());
+            }
+            Assertions.assertNull(framing.read(reader), framing.toString());
+        }
+    }
+
+    @Test
+    void framesAreDecodedRightFromReaderBuffer() throws IOException {
+        Sewy.setSeparator(new byte[]{'\n'});
+        for (Framing framing : new Framing[]{Framing.separator(), Framing.lengthPrefixed(), Framing.varintPrefixed()}) {
+            String[] lines = {"first", "", "third line", "x".repeat(20000)};
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (String line : lines) {
+                framing.write(out, line.getBytes(), 0, line.length());
+            }
+            FrameReader reader = new FrameReader(new FrameReaderTest.PortionInputStream(out.toByteArray(), 1000));
+            LineCodec codec = new LineCodec();
+            for (String line : lines) {
+                Assertions.assertEquals(line, framing.read(reader, codec::decode), framing.toString());
+            }
+            Assertions.assertNull(framing.read(reader, codec::decode), framing.toString());
+        }
+    }
+
+    @Test
+    void gatheredFramesAreReadFromChannel() throws IOException {
+        Sewy.setSeparator(new byte[]{'\n'});
+        for (Framing framing : new Framing[]{Framing.separator(), Framing.lengthPrefixed(), Framing.varintPrefixed()}) {
+            byte[][] payloads = {"first".getBytes(), new byte[0], new byte[300], new byte[70000]};
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] payload : payloads) {
+                if (payload.length > 0) {
+                    payload[payload.length - 1] = 'x';
+                }
+                for (ByteBuffer buffer : framing.frame(ByteBuffer.allocateDirect(framing.envelopeSize()), ByteBuffer.wrap(payload))) {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer.get());
+                    }
+                }
+            }
+            FrameReader reader = new FrameReader();
+            ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(out.toByteArray()));
+            int next = 0;
+            while (next < payloads.length && reader.fill(channel) >= 0) {
+                byte[] frame;
+                while (next < payloads.length && (frame = framing.poll(reader)) != null) {
+                    Assertions.assertArrayEquals(payloads[next++], frame, framing.toString());
+                }
+            }
+            Assertions.assertEquals(payloads.length, next, framing.toString());
+        }
+    }
+
+    @Test
+    void prefixedFramesArePolledOnlyWhenBufferedCompletely() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Framing.varintPrefixed().write(out, new byte[200], 0, 200);
+        FrameReader reader = new FrameReader(new FrameReaderTest.PortionInputStream(out.toByteArray(), 64));
+        Assertions.assertTrue(reader.fill());
+        Assertions.assertNull(Framing.varintPrefixed().poll(reader));
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(reader.fill());
+        }
+        Assertions.assertEquals(200, Framing.varintPrefixed().poll(reader).length);
+    }
+
+    @Test
+    void declaredLengthAloneAllocatesNothing() throws IOException {
+        byte[] data = new byte[14];
+        data[0] = 0x7F;
+        data[1] = (byte) 0xFF;
+        data[2] = (byte) 0xFF;
+        data[3] = (byte) 0xF0;
+        FrameReader reader = new FrameReader(new FrameReaderTest.PortionInputStream(data, 4));
+        Assertions.assertNull(Framing.lengthPrefixed().read(reader));
+    }
+
+    @Test
+    void malformedLengthIsRejected() {
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}));
+        Assertions.assertThrows(IOException.class, () -> Framing.lengthPrefixed().read(reader));
+    }
+
+    @Test
+    void prefixedFrameOverLimitIsRejectedBeforeReading() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Framing.varintPrefixed().write(out, new byte[2000], 0, 2000);
+        FrameReader reader = new FrameReader(new FrameReaderTest.PortionInputStream(out.toByteArray(), 16));
+        reader.setMaxFrameSize(1000);
+        FrameTooLargeException e = Assertions.assertThrows(FrameTooLargeException.class, () -> Framing.varintPrefixed().read(reader));
+        Assertions.assertEquals(2000, e.getFrameSize());
+        Assertions.assertEquals(1000, e.getMaxFrameSize());
+    }
+
+    @Test
+    void frameWithoutSeparatorIsRejectedOnceLimitIsExceeded() throws IOException {
+        FrameReader reader = new FrameReader(new FrameReaderTest.PortionInputStream(new byte[5000], 100));
+        reader.setMaxFrameSize(1000);
+        Assertions.assertThrows(FrameTooLargeException.class, () -> Framing.separator().read(reader));
+    }
+
+    @Test
+    void commandFramingRefusesSeparator() {
+        Sewy.setFraming(Framing.separator());
+        try {
+            Assertions.assertThrows(IllegalStateException.class, Sewy::getCommandFraming);
+        } finally {
+            Sewy.setFraming(null);
+        }
+        Assertions.assertSame(Framing.varintPrefixed(), Sewy.getCommandFraming());
+    }
+}
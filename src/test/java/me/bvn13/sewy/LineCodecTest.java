@@ -0,0 +1,78 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LineCodecTest {
+
+    @Test
+    void asciiAndUnicodeLinesSurviveRoundTrip() {
+        LineCodec codec = new LineCodec();
+        BufferPool pool = new BufferPool();
+        for (String line : new String[] { "", "hello", "\u043f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00" }) {
+            PooledBuffer encoded = codec.encode(line, pool);
+            byte[] bytes = new byte[encoded.buffer().remaining()];
+            encoded.buffer().get(bytes);
+            encoded.release();
+            Assertions.assertArrayEquals(line.getBytes(StandardCharsets.UTF_8), bytes);
+            Assertions.assertEquals(line, codec.decode(bytes, 0, bytes.length));
+        }
+        Assertions.assertEquals(0, pool.getOutstandingCount());
+    }
+
+    @Test
+    void longLineGrowsBuffers() {
+        LineCodec codec = new LineCodec();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append('\u044f');
+        }
+        PooledBuffer encoded = codec.encode(sb, new BufferPool());
+        Assertions.assertEquals(4000, encoded.buffer().remaining());
+        Assertions.assertEquals(sb.toString(), codec.decodeView(encoded.buffer()).toString());
+        encoded.release();
+    }
+
+    @Test
+    void viewIsDecodedFromBufferRange() {
+        LineCodec codec = new LineCodec();
+        byte[] bytes = "xx\u00e9t\u00e9yy".getBytes(StandardCharsets.UTF_8);
+        CharSequence view = codec.decodeView(ByteBuffer.wrap(bytes, 2, bytes.length - 4));
+        Assertions.assertEquals("\u00e9t\u00e9", view.toString());
+        Assertions.assertEquals("t\u00e9", codec.decode(bytes, 4, bytes.length - 6));
+    }
+
+    @Test
+    void malformedInputIsReplaced() {
+        LineCodec codec = new LineCodec();
+        byte[] bytes = new byte[] { 'a', (byte) 0xC3 };
+        Assertions.assertEquals("a\ufffd", codec.decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void otherCharsetIsUsed() {
+        LineCodec codec = new LineCodec(StandardCharsets.UTF_16BE);
+        PooledBuffer encoded = codec.encode("ab", new BufferPool());
+        Assertions.assertEquals(4, encoded.buffer().remaining());
+        Assertions.assertEquals("ab", codec.decodeView(encoded.buffer()).toString());
+        encoded.release();
+    }
+}
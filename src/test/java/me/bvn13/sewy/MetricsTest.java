@@ -0,0 +1,68 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import me.bvn13.sewy.command.PingCommand;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class MetricsTest {
+
+    @Test
+    void histogramReportsPercentilesWithinFactorOfTwo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assertions.assertEquals(100, histogram.getCount());
+        Assertions.assertEquals(50500, histogram.getMeanNanos());
+        Assertions.assertEquals(100000, histogram.getMaxNanos());
+        long p50 = histogram.getPercentileNanos(50);
+        Assertions.assertTrue(p50 >= 50000 && p50 < 100000, String.valueOf(p50));
+        Assertions.assertEquals(100000, histogram.getPercentileNanos(99));
+        Assertions.assertEquals(0, new LatencyHistogram().getPercentileNanos(99));
+    }
+
+    @Test
+    void commandLatencyIsKeptByType() {
+        Sewy.register(PingCommand.class);
+        Metrics metrics = new Metrics();
+        metrics.commandProcessed(PingCommand.class, 1000);
+        metrics.commandProcessed(PingCommand.class, 3000);
+        Assertions.assertEquals(2, metrics.getLatency(PingCommand.class).getCount());
+        Assertions.assertEquals(2L, metrics.getCommandCounts().get(PingCommand.class.getName()));
+        Assertions.assertEquals(2L, metrics.snapshot().get("commands.PingCommand.count"));
+    }
+
+    @Test
+    void metricsAreExposedInJmx() throws JMException {
+        Metrics metrics = new Metrics(() -> 7);
+        metrics.connectionOpened();
+        metrics.frameReceived(10);
+        ObjectName name = metrics.registerMBean("metrics-test");
+        try {
+            Assertions.assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ActiveConnections"));
+            Assertions.assertEquals(10L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesReceived"));
+            Assertions.assertEquals(7L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "OutboundQueueDepth"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
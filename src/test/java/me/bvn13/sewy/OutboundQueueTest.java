@@ -0,0 +1,153 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OutboundQueueTest {
+
+    @Test
+    void framesEnqueuedConcurrentlyAreNotInterleaved() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        OutboundQueue queue = new OutboundQueue(out);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] payload = new byte[100 + i];
+            Arrays.fill(payload, (byte) i);
+            futures.add(CompletableFuture.supplyAsync(() -> queue.enqueue(payload, Framing.lengthPrefixed(), Runnable::run), executor)
+                    .thenCompose(f -> f));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(out.toByteArray()));
+        int count = 0;
+        byte[] frame;
+        while ((frame = Framing.lengthPrefixed().read(reader)) != null) {
+            byte first = frame[0];
+            for (byte b : frame) {
+                Assertions.assertEquals(first, b);
+            }
+            count++;
+        }
+        Assertions.assertEquals(1000, count);
+    }
+
+    @Test
+    void pendingFramesAreWrittenAtOnce() {
+        CountingOutputStream out = new CountingOutputStream();
+        OutboundQueue queue = new OutboundQueue(out);
+        List<Runnable> drains = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(queue.enqueue(new byte[10], Framing.varintPrefixed(), drains::add));
+        }
+        Assertions.assertEquals(1, drains.size());
+        Assertions.assertEquals(100, queue.size());
+        drains.get(0).run();
+        Assertions.assertTrue(futures.stream().allMatch(f -> f.isDone() && !f.isCompletedExceptionally()));
+        Assertions.assertEquals(1, out.writes.get());
+        Assertions.assertEquals(100 * 11, out.size());
+    }
+
+    @Test
+    void pendingFramesFailOnceWritingFails() {
+        OutboundQueue queue = new OutboundQueue(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        });
+        CompletableFuture<Void> first = queue.enqueue(new byte[OutboundQueue.BUFFER_SIZE + 1], Framing.lengthPrefixed(), Runnable::run);
+        Assertions.assertTrue(first.isCompletedExceptionally());
+        CompletableFuture<Void> second = queue.enqueue(new byte[1], Framing.lengthPrefixed(), Runnable::run);
+        Assertions.assertTrue(second.isCompletedExceptionally());
+    }
+
+    @Test
+    void framesFailWhenDrainingIsRejected() {
+        CountingOutputStream out = new CountingOutputStream();
+        OutboundQueue queue = new OutboundQueue(out);
+        CompletableFuture<Void> rejected = queue.enqueue(new byte[1], Framing.lengthPrefixed(), task -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        Assertions.assertTrue(rejected.isCompletedExceptionally());
+        CompletableFuture<Void> next = queue.enqueue(new byte[1], Framing.lengthPrefixed(), Runnable::run);
+        Assertions.assertTrue(next.isDone() && !next.isCompletedExceptionally());
+        Assertions.assertEquals(5, out.size());
+    }
+
+    @Test
+    void drainingIsHandedOverOnceBudgetIsSpent() {
+        CountingOutputStream out = new CountingOutputStream();
+        List<Runnable> handOffs = new ArrayList<>();
+        OutboundQueue queue = new OutboundQueue(out, handOffs::add);
+        List<Runnable> drains = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        int frames = 2 * OutboundQueue.DRAIN_BUDGET / OutboundQueue.BUFFER_SIZE;
+        for (int i = 0; i < frames; i++) {
+            futures.add(queue.enqueue(new byte[OutboundQueue.BUFFER_SIZE], Framing.varintPrefixed(), drains::add));
+        }
+        Assertions.assertEquals(1, drains.size());
+        drains.get(0).run();
+        Assertions.assertEquals(1, handOffs.size());
+        Assertions.assertTrue(futures.stream().anyMatch(f -> !f.isDone()));
+        Assertions.assertTrue(out.size() < frames * OutboundQueue.BUFFER_SIZE);
+        handOffs.get(0).run();
+        Assertions.assertTrue(futures.stream().allMatch(f -> f.isDone() && !f.isCompletedExceptionally()));
+        Assertions.assertEquals(frames * (OutboundQueue.BUFFER_SIZE + 3), out.size());
+    }
+
+    @Test
+    void framesAreCountedOnceWrittenNotOnceQueued() {
+        CountingOutputStream out = new CountingOutputStream();
+        AtomicInteger written = new AtomicInteger();
+        OutboundQueue queue = new OutboundQueue(out, Runnable::run, written::addAndGet);
+        List<Runnable> drains = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue(new byte[100], Framing.varintPrefixed(), drains::add);
+        }
+        Assertions.assertEquals(0, written.get());
+        drains.get(0).run();
+        Assertions.assertEquals(1000, written.get());
+    }
+
+    static class CountingOutputStream extends ByteArrayOutputStream {
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes.incrementAndGet();
+            super.write(b, off, len);
+        }
+    }
+}
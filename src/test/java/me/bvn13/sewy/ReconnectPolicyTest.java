@@ -0,0 +1,44 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class ReconnectPolicyTest {
+
+    @Test
+    void delayGrowsExponentiallyWithJitterUpToMaximum() {
+        ReconnectPolicy policy = new ReconnectPolicy(Duration.ofMillis(100), Duration.ofSeconds(5), 10);
+        long[] expected = {100, 200, 400, 800, 1600, 3200, 5000, 5000};
+        for (int attempt = 0; attempt < expected.length; attempt++) {
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.delayMillis(attempt);
+                Assertions.assertTrue(delay >= expected[attempt] / 2 && delay <= expected[attempt], attempt + ": " + delay);
+            }
+        }
+        Assertions.assertEquals(5000, policy.delayMillis(Integer.MAX_VALUE), 2500);
+    }
+
+    @Test
+    void wrongDelaysAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(Duration.ZERO, Duration.ofSeconds(1), 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(Duration.ofSeconds(2), Duration.ofSeconds(1), 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReconnectPolicy(Duration.ofSeconds(1), Duration.ofSeconds(1), -1));
+    }
+}
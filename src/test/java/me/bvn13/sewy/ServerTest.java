@@ -17,14 +17,41 @@ package me.bvn13.sewy;
 
 import me.bvn13.sewy.command.AbstractCommand;
 import me.bvn13.sewy.command.ComplexCommand;
+import me.bvn13.sewy.command.FileAcceptCommand;
+import me.bvn13.sewy.command.FileDataCommand;
+import me.bvn13.sewy.command.FileOfferCommand;
+import me.bvn13.sewy.command.FileReceivedCommand;
 import me.bvn13.sewy.command.PingCommand;
 import me.bvn13.sewy.command.PongCommand;
+import me.bvn13.sewy.command.RejectCommand;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 public class ServerTest {
 
@@ -153,4 +180,754 @@ public class ServerTest {
         Assertions.assertEquals("b2", check.get().getDatum().get(1).getString());
         Assertions.assertEquals("finish", check.get().getDatum().get(2).getString());
     }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 8)
+    void nioServerIsAbleToPingPong(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+
+        NioCommandServer server = new NioCommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                if (command instanceof PingCommand) {
+                    return new PongCommand((PingCommand) command);
+                }
+                throw new IllegalArgumentException(command.toString());
+            }
+        }, 2);
+        Thread.sleep(500);
+
+        AtomicReference<PongCommand> pong = new AtomicReference<>();
+        CommandClient client = new CommandClient("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                if (command instanceof PongCommand) {
+                    pong.set((PongCommand) command);
+                    return null;
+                }
+                throw new IllegalArgumentException(command.toString());
+            }
+        });
+        client.send(new PingCommand());
+        Thread.sleep(1000);
+        Assertions.assertNotNull(pong.get());
+        Assertions.assertEquals(1, server.getClientsCount());
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 9)
+    void givenMaximumClientsAchieved_whenClientConnects_thenItIsRejected(int port) throws Exception {
+        Server server = new Server("localhost", port, SimpleClientListener.class);
+        server.setMaxClientsCount(1);
+        server.setOverLimitPolicy(Server.OverLimitPolicy.REJECT);
+        Thread.sleep(500);
+        Client<SimpleClientListener> client1 = new Client<>("localhost", port, SimpleClientListener.class);
+        Thread.sleep(500);
+        Client<SimpleClientListener> client2 = new Client<>("localhost", port, SimpleClientListener.class);
+        Assertions.assertEquals(Server.REJECTION_REASON, client2.readLine());
+        Assertions.assertEquals(1, server.getClientsCount());
+        Assertions.assertEquals(1, server.getRejectedClientsCount());
+        client1.stop();
+        client2.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 10)
+    void givenClientConnected_whenClientDisconnects_thenServerForgetsIt(int port) throws Exception {
+        AtomicLong disconnected = new AtomicLong();
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            protected void onDisconnect() {
+                disconnected.incrementAndGet();
+            }
+        });
+        server.setMaxClientsCount(1);
+        Thread.sleep(500);
+        CommandClient client1 = new CommandClient("localhost", port);
+        Thread.sleep(500);
+        Assertions.assertEquals(1, server.getClientsCount());
+        client1.stop();
+        Thread.sleep(500);
+        Assertions.assertEquals(0, server.getClientsCount());
+        Assertions.assertEquals(1, disconnected.get());
+        CommandClient client2 = new CommandClient("localhost", port);
+        Thread.sleep(500);
+        Assertions.assertEquals(1, server.getClientsCount());
+        client2.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 11)
+    void serverIsAbleToBroadcastCommand(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        CommandServer server = new CommandServer("localhost", port);
+        Thread.sleep(500);
+        AtomicLong received = new AtomicLong();
+        Function<Socket, CommandClientListener> listener = (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                if (command instanceof PingCommand) {
+                    received.incrementAndGet();
+                }
+                return null;
+            }
+        };
+        CommandClient client1 = new CommandClient("localhost", port, listener);
+        CommandClient client2 = new CommandClient("localhost", port, listener);
+        Thread.sleep(500);
+        Map<CommandClientListener, Boolean> results = server.send(new PingCommand(), client -> {}, Duration.ofSeconds(1))
+                .get(2, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertTrue(results.values().stream().allMatch(Boolean::booleanValue));
+        Thread.sleep(500);
+        Assertions.assertEquals(2, received.get());
+        client1.stop();
+        client2.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 12)
+    void clientIsAbleToCallServer(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                return new PongCommand((PingCommand) command);
+            }
+        });
+        CommandClient client = new CommandClient("localhost", port);
+        List<PingCommand> pings = new ArrayList<>();
+        List<CompletableFuture<PongCommand>> pongs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            PingCommand ping = new PingCommand();
+            pings.add(ping);
+            pongs.add(client.call(ping));
+        }
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(pings.get(i).getTime(), pongs.get(i).get(5, TimeUnit.SECONDS).getPingTime());
+        }
+        Assertions.assertEquals(0, client.client.getPendingCallsCount());
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 13)
+    void binarySerializerIsUsedForCommands(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                return new PongCommand((PingCommand) command);
+            }
+        });
+        server.setSerializer(new BinaryCommandSerializer());
+        CommandClient client = new CommandClient("localhost", port);
+        client.setSerializer(new BinaryCommandSerializer());
+        PingCommand ping = new PingCommand();
+        PongCommand pong = client.<PongCommand>call(ping).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(ping.getTime(), pong.getPingTime());
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 14)
+    void dispatcherRoutesCommandsToExecutors(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        Sewy.register(ComplexCommand.class);
+        CommandServer server = new CommandServer("localhost", port);
+        server.setDispatcher(new CommandDispatcher()
+                .on(PingCommand.class, PongCommand::new)
+                .on(ComplexCommand.class, command -> new PongCommand(new PingCommand()), CommandDispatcher.Mode.WORKER)
+                .otherwise(command -> null, CommandDispatcher.Mode.INLINE));
+        CommandClient client = new CommandClient("localhost", port);
+        PingCommand ping = new PingCommand();
+        Assertions.assertEquals(ping.getTime(), client.<PongCommand>call(ping).get(5, TimeUnit.SECONDS).getPingTime());
+        Assertions.assertNotNull(client.call(new ComplexCommand()).get(5, TimeUnit.SECONDS));
+        Assertions.assertNull(client.call(new PongCommand(ping)).get(5, TimeUnit.SECONDS));
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 24)
+    void failedRequestIsAnsweredWithRejection(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        Sewy.register(RejectCommand.class);
+        CommandServer server = new CommandServer("localhost", port);
+        server.setDispatcher(new CommandDispatcher()
+                .on(PingCommand.class, command -> {
+                    throw new IllegalStateException("inline failure");
+                })
+                .on(PongCommand.class, command -> {
+                    throw new IllegalStateException("worker failure");
+                }, CommandDispatcher.Mode.WORKER));
+        CommandClient client = new CommandClient("localhost", port);
+        RejectCommand inline = client.<RejectCommand>call(new PingCommand()).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(inline.getReason().contains("inline failure"));
+        RejectCommand worker = client.<RejectCommand>call(new PongCommand(new PingCommand())).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(worker.getReason().contains("worker failure"));
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 15)
+    void slowCommandsAreProcessedInOrderByWorkers(int port) throws Exception {
+        Sewy.register(ComplexCommand.class);
+        WorkerPool workers = new WorkerPool(2, 4);
+        CommandServer server = new NioCommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return command;
+            }
+        });
+        server.setWorkers(workers);
+        CommandClient client = new CommandClient("localhost", port);
+        List<String> echoes = new ArrayList<>();
+        client.setDispatcher(new CommandDispatcher().on(ComplexCommand.class, echo -> {
+            synchronized (echoes) {
+                echoes.add(echo.getDatum().get(0).getString());
+            }
+            return null;
+        }));
+        for (int i = 0; i < 50; i++) {
+            ComplexCommand command = new ComplexCommand();
+            command.add(new ComplexCommand.SimpleData(String.valueOf(i)));
+            client.send(command);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && echoes.size() < 50) {
+            Thread.sleep(10);
+        }
+        synchronized (echoes) {
+            Assertions.assertEquals(50, echoes.size());
+            for (int i = 0; i < 50; i++) {
+                Assertions.assertEquals(String.valueOf(i), echoes.get(i));
+            }
+        }
+        client.stop();
+        server.stop();
+        workers.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 25)
+    void inlineAndWorkerCommandsKeepOrderInLane(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(ComplexCommand.class);
+        WorkerPool workers = new WorkerPool(2, 8);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        CommandServer server = new CommandServer("localhost", port);
+        server.setWorkers(workers);
+        server.setDispatcher(new CommandDispatcher()
+                .on(PingCommand.class, ping -> {
+                    processed.add("ping");
+                    return null;
+                })
+                .on(ComplexCommand.class, command -> {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    processed.add(command.getDatum().get(0).getString());
+                    return null;
+                }, CommandDispatcher.Mode.WORKER));
+        CommandClient client = new CommandClient("localhost", port);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ComplexCommand command = new ComplexCommand();
+            command.add(new ComplexCommand.SimpleData(String.valueOf(i)));
+            client.send(command);
+            client.send(new PingCommand());
+            expected.add(String.valueOf(i));
+            expected.add("ping");
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && processed.size() < expected.size()) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(expected, processed);
+        client.stop();
+        server.stop();
+        workers.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 16)
+    void serverCollectsMetrics(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        CommandServer server = new CommandServer("localhost", port);
+        server.setDispatcher(new CommandDispatcher().on(PingCommand.class, PongCommand::new));
+        CommandClient client = new CommandClient("localhost", port);
+        for (int i = 0; i < 10; i++) {
+            client.call(new PingCommand()).get(5, TimeUnit.SECONDS);
+        }
+        Metrics metrics = server.getMetrics();
+        // frames are counted once flushed, that may happen after the opposite side has received them
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && (metrics.getFramesSent() < 10 || client.getMetrics().getFramesSent() < 10)) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, metrics.getActiveConnections());
+        Assertions.assertEquals(1, metrics.getAcceptedConnections());
+        Assertions.assertEquals(10, metrics.getFramesReceived());
+        Assertions.assertEquals(10, metrics.getFramesSent());
+        Assertions.assertEquals(10, metrics.getLatency(PingCommand.class).getCount());
+        Assertions.assertEquals(10, client.getMetrics().getFramesSent());
+        client.stop();
+        deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && metrics.getActiveConnections() > 0) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, metrics.getActiveConnections());
+        Assertions.assertEquals(1, metrics.getTotalConnections());
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 17)
+    void commandsAreBatched(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        Sewy.register(ComplexCommand.class);
+        List<String> received = new ArrayList<>();
+        CommandServer server = new CommandServer("localhost", port);
+        server.setBatching(new BatchingPolicy(16, 64 * 1024, Duration.ofMillis(5)));
+        server.setDispatcher(new CommandDispatcher()
+                .on(PingCommand.class, PongCommand::new)
+                .on(ComplexCommand.class, command -> {
+                    synchronized (received) {
+                        received.add(command.getDatum().get(0).getString());
+                    }
+                    return null;
+                }));
+        CommandClient client = new CommandClient("localhost", port);
+        client.setBatching(new BatchingPolicy(10, 64 * 1024, Duration.ofSeconds(10)));
+        for (int i = 0; i < 95; i++) {
+            ComplexCommand command = new ComplexCommand();
+            command.add(new ComplexCommand.SimpleData(String.valueOf(i)));
+            client.send(command);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && received.size() < 90) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(9, server.getMetrics().getFramesReceived());
+        client.flush();
+        List<CompletableFuture<PongCommand>> calls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            calls.add(client.call(new PingCommand()));
+        }
+        client.flush();
+        for (CompletableFuture<PongCommand> call : calls) {
+            Assertions.assertNotNull(call.get(5, TimeUnit.SECONDS));
+        }
+        synchronized (received) {
+            Assertions.assertEquals(95, received.size());
+            for (int i = 0; i < 95; i++) {
+                Assertions.assertEquals(String.valueOf(i), received.get(i));
+            }
+        }
+        Assertions.assertEquals(11, server.getMetrics().getFramesReceived());
+        Assertions.assertEquals(5, server.getMetrics().getLatency(PingCommand.class).getCount());
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 18)
+    void framesAreCompressedOnceNegotiated(int port) throws Exception {
+        Sewy.register(ComplexCommand.class);
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                return command;
+            }
+        });
+        server.setCompression(new CompressionPolicy(256, 6));
+        CommandClient client = new CommandClient("localhost", port);
+        client.setCompression(new CompressionPolicy());
+        ComplexCommand command = new ComplexCommand();
+        for (int i = 0; i < 100; i++) {
+            command.add(new ComplexCommand.SimpleData("repeated string " + i % 3));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !client.client.isCompressing()) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(client.client.isCompressing());
+        ComplexCommand echo = client.<ComplexCommand>call(command).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(100, echo.getDatum().size());
+        Assertions.assertEquals("repeated string 2", echo.getDatum().get(98).getString());
+        long raw = Sewy.getSerializer().serialize(command).length;
+        Assertions.assertTrue(server.getMetrics().getBytesReceived() < raw / 2);
+        Assertions.assertTrue(client.getMetrics().getBytesReceived() < raw / 2);
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 29)
+    void compressionSetBeforeConnectingIsOffered(int port) throws Exception {
+        CommandServer server = new CommandServer("localhost", port);
+        server.setCompression(new CompressionPolicy());
+        CommandClient client = new CommandClient();
+        client.setCompression(new CompressionPolicy());
+        client.connect("localhost", port, CommandClientListener::new);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !client.client.isCompressing()) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(client.client.isCompressing());
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 26)
+    void compressedFrameIsRefusedUnlessNegotiated(int port) throws Exception {
+        Sewy.register(ComplexCommand.class);
+        List<AbstractCommand> received = new CopyOnWriteArrayList<>();
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                received.add(command);
+                return null;
+            }
+        });
+        ComplexCommand command = new ComplexCommand();
+        for (int i = 0; i < 100; i++) {
+            command.add(new ComplexCommand.SimpleData("repeated string"));
+        }
+        PooledOutputStream out = new PooledOutputStream(new BufferPool());
+        CommandFrame.writeHeader(out, 0, 0);
+        Sewy.getSerializer().serialize(command, out);
+        PooledBuffer compressed = CommandFrame.compress(out.toBuffer(), new FrameCompressor(), new CompressionPolicy());
+        try (Socket socket = new Socket("localhost", port)) {
+            Framing.varintPrefixed().write(socket.getOutputStream(), compressed.array(), compressed.buffer().position(), compressed.buffer().remaining());
+            socket.getOutputStream().flush();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < deadline && server.getMetrics().getDecodeFailures() == 0) {
+                Thread.sleep(10);
+            }
+        } finally {
+            compressed.release();
+        }
+        Assertions.assertEquals(1, server.getMetrics().getDecodeFailures());
+        Assertions.assertTrue(received.isEmpty());
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 19)
+    void poolSpreadsCommandsAndReplacesBrokenConnections(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        Map<Long, AtomicLong> counts = new ConcurrentHashMap<>();
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                counts.computeIfAbsent(getId(), id -> new AtomicLong()).incrementAndGet();
+                return new PongCommand((PingCommand) command);
+            }
+        });
+        CommandClientPool pool = new CommandClientPool(
+                List.of(new InetSocketAddress("localhost", port)), 3,
+                CommandClientPool.Balancing.ROUND_ROBIN, CommandClientListener::new, client -> {});
+        pool.setReconnectDelay(Duration.ofMillis(50));
+        Assertions.assertEquals(3, pool.getConnectedCount());
+        for (int i = 0; i < 30; i++) {
+            Assertions.assertNotNull(pool.call(new PingCommand()).get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(3, counts.size());
+        for (AtomicLong count : counts.values()) {
+            Assertions.assertEquals(10, count.get());
+        }
+        server.clients.values().iterator().next().stop();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && pool.getConnectedCount() == 3) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotNull(pool.call(new PingCommand()).get(5, TimeUnit.SECONDS));
+        }
+        deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && (pool.getConnectedCount() < 3 || server.getClientsCount() < 3)) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(3, pool.getConnectedCount());
+        Assertions.assertEquals(3, server.getClientsCount());
+        pool.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 20)
+    void oversizedFrameDisconnectsWhileStreamPassesInChunks(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(ComplexCommand.class);
+        AtomicLong streamed = new AtomicLong();
+        CommandServer server = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onStream(AbstractCommand command, InputStream data) throws IOException {
+                ReadableByteChannel channel = Channels.newChannel(data);
+                ByteBuffer buffer = ByteBuffer.allocate(333);
+                for (int read; (read = channel.read(buffer)) >= 0; buffer.clear()) {
+                    streamed.addAndGet(read);
+                }
+                return new PongCommand((PingCommand) command);
+            }
+        });
+        server.setMaxFrameSize(4096);
+        CommandClient client = new CommandClient("localhost", port);
+        client.setMaxFrameSize(4096);
+        CompletableFuture<PongCommand> pong = new CompletableFuture<>();
+        CommandClient answered = new CommandClient("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                pong.complete((PongCommand) command);
+                return null;
+            }
+        });
+        answered.setMaxFrameSize(4096);
+        answered.sendStream(new PingCommand(), new ByteArrayInputStream(new byte[3 * 1024 * 1024]));
+        Assertions.assertNotNull(pong.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(3 * 1024 * 1024, streamed.get());
+
+        ComplexCommand large = new ComplexCommand();
+        large.add(new ComplexCommand.SimpleData(new String(new char[10000])));
+        client.send(large);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && client.isConnected()) {
+            Thread.sleep(10);
+        }
+        Assertions.assertFalse(client.isConnected());
+        Assertions.assertEquals(1, server.getMetrics().getFramesTooLarge());
+        answered.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 27)
+    void streamsBeyondLimitAreRefused(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        Sewy.register(RejectCommand.class);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CommandServer server = new CommandServer("localhost", port, (socket) -> {
+            CommandClientListener listener = new CommandClientListener(socket) {
+                @Override
+                public AbstractCommand onStream(AbstractCommand command, InputStream data) throws IOException {
+                    data.readAllBytes();
+                    release.join();
+                    return new PongCommand((PingCommand) command);
+                }
+            };
+            listener.setMaxStreams(1);
+            return listener;
+        });
+        CommandClient client = new CommandClient("localhost", port);
+        CompletableFuture<AbstractCommand> first = client.client.callStream(new PingCommand(), new ByteArrayInputStream(new byte[1000]), Duration.ofSeconds(10));
+        CompletableFuture<AbstractCommand> second = client.client.callStream(new PingCommand(), new ByteArrayInputStream(new byte[1000]), Duration.ofSeconds(10));
+        Assertions.assertInstanceOf(RejectCommand.class, second.get(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(first.isDone());
+        release.complete(null);
+        Assertions.assertInstanceOf(PongCommand.class, first.get(5, TimeUnit.SECONDS));
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 21)
+    void fileTransferResumesAndVerifiesChecksum(int port) throws Exception {
+        Sewy.register(FileOfferCommand.class);
+        Sewy.register(FileAcceptCommand.class);
+        Sewy.register(FileDataCommand.class);
+        Sewy.register(FileReceivedCommand.class);
+        Sewy.register(RejectCommand.class);
+        Path source = Files.createTempFile("sewy", ".bin");
+        Path directory = Files.createTempDirectory("sewy");
+        byte[] content = new byte[1536 * 1024];
+        new Random(42).nextBytes(content);
+        Files.write(source, content);
+        Path target = directory.resolve(source.getFileName().toString());
+        Path part = directory.resolve(source.getFileName() + ".part");
+        CommandServer server = new CommandServer("localhost", port);
+        server.setFileDirectory(directory);
+        CommandClient client = new CommandClient("localhost", port);
+
+        Files.write(part, Arrays.copyOf(content, 500000));
+        FileReceivedCommand received = client.sendFile(source);
+        Assertions.assertEquals(content.length, received.getSize());
+        Assertions.assertEquals(content.length - 500000, received.getReceived());
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target));
+        Assertions.assertFalse(Files.exists(part));
+        // existing file is not overwritten by default
+        Assertions.assertThrows(IOException.class, () -> client.sendFile(source));
+        Files.delete(target);
+
+        Files.write(part, new byte[1000]);
+        Assertions.assertThrows(IOException.class, () -> client.sendFile(source));
+        Assertions.assertFalse(Files.exists(part));
+        Assertions.assertEquals(content.length, client.sendFile(source).getReceived());
+
+        Assertions.assertThrows(IOException.class, () -> client.client.sendFile(source, "../escaped", Duration.ofSeconds(5)));
+        Assertions.assertFalse(Files.exists(directory.resolveSibling("escaped.part")));
+        client.stop();
+
+        server.setFileDirectory(directory, new FileTransferPolicy(content.length, true));
+        CommandClient overwriting = new CommandClient("localhost", port);
+        Assertions.assertEquals(content.length, overwriting.sendFile(source).getReceived());
+        overwriting.stop();
+        server.setFileDirectory(directory, new FileTransferPolicy(content.length - 1, true));
+        CommandClient limited = new CommandClient("localhost", port);
+        Assertions.assertThrows(IOException.class, () -> limited.sendFile(source));
+        Assertions.assertFalse(Files.exists(part));
+        limited.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 22)
+    void clientReconnectsAndSendsBufferedCommands(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        CommandServer server = new CommandServer("localhost", port);
+        CommandClient client = new CommandClient();
+        // first attempt to reconnect is delayed long enough to buffer commands meanwhile
+        client.setReconnect(new ReconnectPolicy(Duration.ofSeconds(1), Duration.ofSeconds(1), 10));
+        List<ConnectionState> states = new CopyOnWriteArrayList<>();
+        CountDownLatch disconnected = new CountDownLatch(1);
+        client.whenStateChanged(states::add);
+        client.whenStateChanged(state -> {
+            if (state == ConnectionState.DISCONNECTED) {
+                disconnected.countDown();
+            }
+        });
+        client.connect("localhost", port, CommandClientListener::new);
+        Assertions.assertEquals(ConnectionState.CONNECTED, client.getState());
+
+        server.stop();
+        Assertions.assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            client.send(new PingCommand());
+        }
+        Assertions.assertThrows(IOException.class, () -> client.send(new PingCommand()));
+        Assertions.assertEquals(10, client.getBufferedCommandsCount());
+
+        AtomicLong pings = new AtomicLong();
+        CommandServer restarted = new CommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            public AbstractCommand onCommand(AbstractCommand command) {
+                pings.incrementAndGet();
+                return null;
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && pings.get() < 10) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(10, pings.get());
+        Assertions.assertEquals(0, client.getBufferedCommandsCount());
+        Assertions.assertEquals(ConnectionState.CONNECTED, client.getState());
+        client.send(new PingCommand());
+        client.stop();
+        Assertions.assertEquals(ConnectionState.STOPPED, client.getState());
+        Assertions.assertEquals(List.of(ConnectionState.CONNECTING, ConnectionState.CONNECTED, ConnectionState.DISCONNECTED),
+                states.subList(0, 3));
+        Assertions.assertEquals(ConnectionState.STOPPED, states.get(states.size() - 1));
+        Assertions.assertTrue(client.getMetrics().getTotalConnections() >= 2);
+        restarted.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 23)
+    void heartbeatsMeasureRoundTripAndCloseIdleConnections(int port) throws Exception {
+        Sewy.register(PingCommand.class);
+        Sewy.register(PongCommand.class);
+        CommandServer server = new CommandServer("localhost", port);
+        server.setHeartbeat(new HeartbeatPolicy(Duration.ofMillis(100), Duration.ofMillis(500), Duration.ZERO));
+        CommandClient client = new CommandClient("localhost", port);
+        client.setHeartbeat(new HeartbeatPolicy(Duration.ofMillis(100), Duration.ofSeconds(5), Duration.ZERO));
+        Socket silent = new Socket("localhost", port);
+        silent.setSoTimeout(5000);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && server.getMetrics().getIdleTimeouts() == 0) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, server.getMetrics().getIdleTimeouts());
+        Assertions.assertEquals(-1, drain(silent));
+        Thread.sleep(500);
+        Assertions.assertTrue(client.isConnected());
+        Assertions.assertEquals(1, server.getClientsCount());
+        Assertions.assertNotNull(client.client.getRoundTripTime());
+        Assertions.assertTrue(client.getMetrics().getRoundTrip().getCount() > 0);
+        Assertions.assertTrue(server.getMetrics().getRoundTrip().getCount() > 0);
+        silent.close();
+        client.stop();
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = START_PORT + 28)
+    void nioServerKeepsBytesAndSeparatorTogether(int port) throws Exception {
+        final int threads = 4;
+        final int lines = 500;
+        NioCommandServer server = new NioCommandServer("localhost", port, (socket) -> new CommandClientListener(socket) {
+            @Override
+            protected void onConnect() {
+                for (int t = 0; t < threads; t++) {
+                    final int thread = t;
+                    new Thread(() -> {
+                        try {
+                            for (int i = 0; i < lines; i++) {
+                                writeBytes(("line-" + thread + "-" + i).getBytes(), new byte[]{'\n'});
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }).start();
+                }
+            }
+        }, 1);
+        Thread.sleep(500);
+
+        Client<SimpleClientListener> client = new Client<>("localhost", port, SimpleClientListener.class);
+        int[] next = new int[threads];
+        for (int i = 0; i < threads * lines; i++) {
+            String[] line = new String(client.readBytes(new byte[]{'\n'})).split("-");
+            Assertions.assertEquals(3, line.length);
+            Assertions.assertEquals("line", line[0]);
+            int thread = Integer.parseInt(line[1]);
+            Assertions.assertEquals(next[thread]++, Integer.parseInt(line[2]));
+        }
+        client.stop();
+        server.stop();
+    }
+
+    private static int drain(Socket socket) throws IOException {
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = socket.getInputStream().read(buffer)) >= 0) {
+        }
+        return read;
+    }
 }
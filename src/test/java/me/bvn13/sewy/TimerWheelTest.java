@@ -0,0 +1,48 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TimerWheelTest {
+
+    @Test
+    void timeoutsExpireAtTheirTickAcrossRounds() {
+        TimerWheel wheel = new TimerWheel(TimeUnit.HOURS.toNanos(1), 4);
+        TimerWheel.Timeout soon = wheel.schedule(() -> {}, 2, TimeUnit.HOURS);
+        TimerWheel.Timeout later = wheel.schedule(() -> {}, 5, TimeUnit.HOURS);
+        TimerWheel.Timeout cancelled = wheel.schedule(() -> {}, 3, TimeUnit.HOURS);
+        cancelled.cancel();
+        Assertions.assertTrue(wheel.advance(1).isEmpty());
+        Assertions.assertTrue(wheel.advance(2).isEmpty());
+        Assertions.assertEquals(soon, wheel.advance(3).get(0));
+        Assertions.assertTrue(wheel.advance(4).isEmpty());
+        Assertions.assertTrue(wheel.advance(5).isEmpty());
+        Assertions.assertEquals(later, wheel.advance(6).get(0));
+        Assertions.assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    void sharedWheelRunsScheduledTask() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        TimerWheel.shared().schedule(fired::countDown, 30, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+}
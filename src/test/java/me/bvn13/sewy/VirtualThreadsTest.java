@@ -0,0 +1,62 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreadsTest {
+
+    // virtual threads are final API since JDK 21, preview features are not enabled for tests
+    private static final boolean SUPPORTED = Runtime.version().feature() >= 21;
+
+    @AfterEach
+    void restoreExecutorFactory() {
+        Sewy.setExecutorFactory(Executors::newCachedThreadPool);
+    }
+
+    @Test
+    void supportIsDetectedByRuntime() {
+        Assertions.assertEquals(SUPPORTED, VirtualThreads.isSupported());
+    }
+
+    @Test
+    void virtualThreadsAreUsedIfSupported() throws Exception {
+        Assertions.assertEquals(SUPPORTED, Sewy.useVirtualThreads());
+        ExecutorService executor = Sewy.createExecutor();
+        try {
+            String thread = executor.submit(() -> Thread.currentThread().toString()).get(5, TimeUnit.SECONDS);
+            // virtual threads are named like VirtualThread[#22]/runnable@ForkJoinPool-1-worker-1
+            Assertions.assertEquals(SUPPORTED, thread.startsWith("VirtualThread"), thread);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void executorIsRefusedIfNotSupported() {
+        if (SUPPORTED) {
+            VirtualThreads.newExecutor().shutdown();
+        } else {
+            Assertions.assertThrows(UnsupportedOperationException.class, VirtualThreads::newExecutor);
+        }
+    }
+}
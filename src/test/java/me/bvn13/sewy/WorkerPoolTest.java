@@ -0,0 +1,71 @@
+/*
+   Copyright 2022 Vyacheslav Boyko
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package me.bvn13.sewy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class WorkerPoolTest {
+
+    @Test
+    void laneKeepsOrderOfTasks() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(4, 16);
+        WorkerPool.Lane lane = pool.newLane();
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            int number = i;
+            lane.submit(() -> {
+                processed.add(number);
+                done.countDown();
+            });
+        }
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i, processed.get(i));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void fullLaneCallsBackOnceTaskIsProcessed() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(1, 2);
+        WorkerPool.Lane lane = pool.newLane();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch available = new CountDownLatch(1);
+        lane.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        lane.submit(() -> {
+        });
+        Assertions.assertTrue(lane.isFull());
+        lane.whenAvailable(available::countDown);
+        Assertions.assertEquals(1, available.getCount());
+        release.countDown();
+        Assertions.assertTrue(available.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+}